@@ -3,6 +3,7 @@
 #     $WORKSPACE/cat_database.sh
 
 # This script needs to be run once, before using CatShop
+# Give a catalogue file (csv or tsv) to load it instead of the test data
 # The contents of 'database.txt' tells it what the 
 # database configuration is (derby, or a remote sql service)
 # (You could extend the jenkins pipleine to test this too)
@@ -11,4 +12,4 @@
 
 echo set up the CatShop database
 
-java -cp "${CP_CATSHOP}" clients/Setup
+java -cp "${CP_CATSHOP}" clients/Setup "$@"
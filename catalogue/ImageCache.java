@@ -0,0 +1,144 @@
+package catalogue;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds decoded pictures of products so that a picture file is only
+ *  read and decoded once, however often the product is looked at.
+ * The least recently used pictures are removed once the pictures
+ *  held use more than the memory allowed.
+ * Pictures can also be held scaled to fit the area they are shown in.
+ * @version 1.0
+ */
+
+public class ImageCache
+{
+  private static final ImageCache theShared =
+    new ImageCache( 32L * 1024 * 1024 );        // 32 MB
+
+  private final long theMaxBytes;               // Memory allowed
+  private long       theBytes  = 0;             // Memory used
+  private long       theHits   = 0;
+  private long       theMisses = 0;
+
+  // Pictures keyed by file name (and size), least recently used first
+  private final LinkedHashMap<String,ImageIcon> thePictures =
+    new LinkedHashMap<>( 16, 0.75f, true );
+
+  /**
+   * The cache of pictures shared by all users in this program
+   * @return The shared cache
+   */
+  public static ImageCache shared()
+  {
+    return theShared;
+  }
+
+  /**
+   * Create a cache of pictures
+   * @param maxBytes Memory the decoded pictures may use
+   */
+  public ImageCache( long maxBytes )
+  {
+    theMaxBytes = maxBytes;
+  }
+
+  /**
+   * Return the picture held in the file
+   * @param file File name of the picture
+   * @return The picture
+   */
+  public ImageIcon get( String file )
+  {
+    return get( file, 0, 0 );
+  }
+
+  /**
+   * Return the picture held in the file scaled to fit in
+   *  the area given, keeping its shape.
+   * @param file   File name of the picture
+   * @param width  Width of area, 0 for picture as is
+   * @param height Height of area, 0 for picture as is
+   * @return The picture
+   */
+  public ImageIcon get( String file, int width, int height )
+  {
+    String key = width > 0 && height > 0
+                 ? file + "@" + width + "x" + height
+                 : file;
+    synchronized ( this )
+    {
+      ImageIcon ic = thePictures.get( key );
+      if ( ic != null )
+      {
+        theHits++;
+        return ic;
+      }
+      theMisses++;
+    }
+
+    ImageIcon ic = new ImageIcon( file );       // Read & decode
+    if ( ic.getIconWidth() <= 0 )               // No picture
+      return ic;                                //  may appear later
+    if ( width > 0 && height > 0 )
+      ic = scale( ic, width, height );
+
+    synchronized ( this )
+    {
+      if ( thePictures.put( key, ic ) == null )
+        theBytes += bytes( ic );
+      evict();
+    }
+    return ic;
+  }
+
+  public synchronized long hits()   { return theHits; }
+  public synchronized long misses() { return theMisses; }
+  public synchronized long bytes()  { return theBytes; }
+
+  /**
+   * Remove the least recently used pictures until
+   *  within the memory allowed, but always keep the newest
+   */
+  private void evict()
+  {
+    Iterator<Map.Entry<String,ImageIcon>> it =
+      thePictures.entrySet().iterator();
+    while ( theBytes > theMaxBytes && thePictures.size() > 1 )
+    {
+      theBytes -= bytes( it.next().getValue() );
+      it.remove();
+    }
+  }
+
+  /**
+   * Approximate memory used by a decoded picture (4 bytes a pixel)
+   * @param ic Picture
+   * @return bytes used
+   */
+  private static long bytes( ImageIcon ic )
+  {
+    return 4L * ic.getIconWidth() * ic.getIconHeight();
+  }
+
+  private static ImageIcon scale( ImageIcon ic, int width, int height )
+  {
+    double by = Math.min( (double) width  / ic.getIconWidth(),
+                          (double) height / ic.getIconHeight() );
+    int w = Math.max( 1, (int) ( ic.getIconWidth()  * by ) );
+    int h = Math.max( 1, (int) ( ic.getIconHeight() * by ) );
+    BufferedImage img =
+      new BufferedImage( w, h, BufferedImage.TYPE_INT_ARGB );
+    Graphics2D g = img.createGraphics();
+    g.setRenderingHint( RenderingHints.KEY_INTERPOLATION,
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR );
+    g.drawImage( ic.getImage(), 0, 0, w, h, null );
+    g.dispose();
+    return new ImageIcon( img );
+  }
+}
@@ -0,0 +1,37 @@
+package catalogue;
+
+import java.io.Serializable;
+
+/**
+ * A product together with where its picture is held.
+ * Returned by a single lookup of a product in the stock list.
+ * @version 1.0
+ */
+
+public class ProductInfo extends Product implements Serializable
+{
+  private static final long serialVersionUID = 1;
+  private String thePicture;          // File name of the picture
+
+  /**
+   * Construct a product and its picture
+   * @param aProductNum Product number
+   * @param aDescription Description of product
+   * @param aPrice The price of the product
+   * @param aQuantity The stock level of the product
+   * @param aPicture File name of the picture of the product
+   */
+  public ProductInfo( String aProductNum, String aDescription,
+                      double aPrice, int aQuantity, String aPicture )
+  {
+    super( aProductNum, aDescription, aPrice, aQuantity );
+    thePicture = aPicture;
+  }
+
+  public String getPicture()     { return thePicture; }
+
+  public void setPicture( String aPicture )
+  {
+    thePicture = aPicture;
+  }
+}
@@ -0,0 +1,198 @@
+package clients;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Write a made up catalogue of any size, to be loaded by Setup,
+ *  so that the system can be tried with many products.
+ * Some products are far more popular than others (a Zipf
+ *  distribution), popular products have more stock and a file
+ *  of sales that follows the same popularity can also be written.
+ * The same seed always gives the same catalogue.
+ * <PRE>
+ *  java clients.CatalogueGenerator [-n products] [-skew s] [-seed n]
+ *                                  [-sales count file] [catalogue.csv]
+ *  java clients.Setup catalogue.csv
+ * </PRE>
+ * @version 1.0
+ */
+
+class CatalogueGenerator
+{
+  private static final String[] theAdjectives = {
+    "Compact", "Deluxe", "Digital", "Cordless", "Smart", "Portable",
+    "Classic", "Slim", "Wireless", "Stainless", "Mini", "Family",
+  };
+  private static final String[] theThings = {
+    "TV", "Radio", "Toaster", "Watch", "Camera", "MP3 player",
+    "USB drive", "Kettle", "Headphones", "Speaker", "Lamp", "Fan",
+    "Blender", "Iron", "Clock", "Charger", "Keyboard", "Monitor",
+  };
+  private static final int PICTURES = 7;            // images/pic000n.jpg
+
+  private final int    theCount;                    // Products
+  private final double theSkew;                     // Zipf exponent
+  private final Random theRandom;
+  private final int[]  theRank;                     // Product -> rank
+  private final int[]  theProduct;                  // Rank -> product
+  private final double[] theCumulative;             // By rank
+
+  public static void main( String[] args )
+  {
+    int    count = 100000;
+    double skew  = 1.0;
+    long   seed  = 553;
+    long   sales = 0;
+    String salesFile = null;
+    String file  = "catalogue.csv";
+    try
+    {
+      for ( int i = 0; i < args.length; i++ )
+      {
+        switch ( args[i] )
+        {
+          case "-n"     : count = Integer.parseInt( args[++i] );  break;
+          case "-skew"  : skew  = Double.parseDouble( args[++i] ); break;
+          case "-seed"  : seed  = Long.parseLong( args[++i] );    break;
+          case "-sales" : sales = Long.parseLong( args[++i] );
+                          salesFile = args[++i];                   break;
+          default       : file  = args[i];
+        }
+      }
+    } catch ( NumberFormatException | ArrayIndexOutOfBoundsException e )
+    {
+      System.err.println( "Usage: CatalogueGenerator [-n products] " +
+                          "[-skew s] [-seed n] [-sales count file] " +
+                          "[catalogue.csv]" );
+      System.exit( -1 );
+    }
+
+    CatalogueGenerator gen = new CatalogueGenerator( count, skew, seed );
+    try
+    {
+      long start = System.nanoTime();
+      gen.writeCatalogue( file );
+      System.out.printf( "%,d products written to %s in %.1fs%n",
+                         count, file, ( System.nanoTime()-start ) / 1e9 );
+      if ( salesFile != null )
+      {
+        gen.writeSales( salesFile, sales );
+        System.out.printf( "%,d sales written to %s%n", sales, salesFile );
+      }
+    } catch ( IOException e )
+    {
+      System.err.println( "Can not write: " + e.getMessage() );
+      System.exit( -1 );
+    }
+  }
+
+  /**
+   * Create a catalogue, choosing at random which products are popular
+   * @param count Number of products
+   * @param skew  Zipf exponent, 0 all equally popular
+   * @param seed  Seed for the random numbers
+   */
+  CatalogueGenerator( int count, double skew, long seed )
+  {
+    theCount  = count;
+    theSkew   = skew;
+    theRandom = new Random( seed );
+
+    theProduct = new int[ count ];                  // Shuffle, so
+    for ( int i = 0; i < count; i++ )               //  popular products
+      theProduct[i] = i;                            //  are spread out
+    for ( int i = count - 1; i > 0; i-- )
+    {
+      int j = theRandom.nextInt( i + 1 );
+      int t = theProduct[i]; theProduct[i] = theProduct[j]; theProduct[j] = t;
+    }
+    theRank = new int[ count ];
+    for ( int r = 0; r < count; r++ )
+      theRank[ theProduct[r] ] = r;
+
+    theCumulative = new double[ count ];            // P(rank <= r)
+    double total = 0;
+    for ( int r = 0; r < count; r++ )
+    {
+      total += weight( r );
+      theCumulative[r] = total;
+    }
+    for ( int r = 0; r < count; r++ )
+      theCumulative[r] /= total;
+  }
+
+  /**
+   * Product number of the i'th product, at least 4 digits
+   * @param i Product 0 ..
+   * @return Product number
+   */
+  String productNo( int i )
+  {
+    int digits = Math.max( 4, Integer.toString( theCount ).length() );
+    return String.format( "%0" + digits + "d", i + 1 );
+  }
+
+  /**
+   * Write the catalogue in the form read by Setup
+   * @param file File name
+   * @throws IOException if the file can not be written
+   */
+  void writeCatalogue( String file ) throws IOException
+  {
+    double top = weight( 0 );
+    try ( BufferedWriter out = Files.newBufferedWriter( Paths.get( file ),
+                                                 StandardCharsets.UTF_8 ) )
+    {
+      out.write( "productNo,description,price,stockLevel,picture\n" );
+      for ( int i = 0; i < theCount; i++ )
+      {
+        String description =
+          theAdjectives[ theRandom.nextInt( theAdjectives.length ) ] + " " +
+          theThings[ theRandom.nextInt( theThings.length ) ] + " " +
+          ( 100 + theRandom.nextInt( 900 ) );
+        double price = Math.round(                  // Mostly cheap
+          Math.exp( 1.5 + theRandom.nextGaussian() ) * 100 ) / 100.0 + 0.99;
+        int    stock = 1 + (int) ( 1000 * weight( theRank[i] ) / top ) +
+                       theRandom.nextInt( 10 );
+        String picture = String.format( "images/pic%04d.jpg",
+                                        1 + i % PICTURES );
+        out.write( productNo( i ) + "," + description + "," +
+                   String.format( "%.2f", price ) + "," + stock + "," +
+                   picture + "\n" );
+      }
+    }
+  }
+
+  /**
+   * Write product numbers of sales, one a line, chosen
+   *  by popularity, to be used to drive a benchmark
+   * @param file  File name
+   * @param count Number of sales
+   * @throws IOException if the file can not be written
+   */
+  void writeSales( String file, long count ) throws IOException
+  {
+    try ( BufferedWriter out = Files.newBufferedWriter( Paths.get( file ),
+                                                 StandardCharsets.UTF_8 ) )
+    {
+      for ( long n = 0; n < count; n++ )
+      {
+        int r = Arrays.binarySearch( theCumulative, theRandom.nextDouble() );
+        if ( r < 0 ) r = -r - 1;                    // First rank above
+        out.write( productNo( theProduct[ Math.min( r, theCount-1 ) ] ) );
+        out.write( '\n' );
+      }
+    }
+  }
+
+  private double weight( int rank )
+  {
+    return 1.0 / Math.pow( rank + 1, theSkew );
+  }
+}
@@ -2,14 +2,27 @@ package clients;
 
 import dbAccess.DBAccess;
 import dbAccess.DBAccessFactory;
+import dbAccess.SchemaMigration;
+import dbAccess.StockJournal;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
- * Repopulate the database with test data
+ * Repopulate the database with test data,
+ *  or with the products in a catalogue file given as an argument.
+ * A catalogue file has a line for each product
+ *  productNo,description,price,stockLevel[,picture]
+ *  separated by tabs if the file name ends in .tsv, a description
+ *  containing commas is put in double quotes.
  * @author  Mike Smith University of Brighton
- * @version 3.0 Derby
+ * @version 3.1 Derby
  */
 
 class Setup 
@@ -22,12 +35,14 @@ class Setup
 //  "drop table StockList",
 
 
+  "drop table StockTable",
   "drop table ProductTable",
-  "create table ProductTable ("+
-      "productNo      Char(4)," +
-      "description    Varchar(40)," +
-      "picture        Varchar(80)," +
-      "price          Float)",
+  "drop table StockJournalMark",
+  "drop table StockChangeLog",
+  "drop table SchemaVersion",
+  "*j",                                   // Old stock journal
+  "*m",                                   // Create tables (keyed)
+  "*i",                                   // Catalogue file if given
 
   "insert into ProductTable values " +
      "('0001', '40 inch LED HD TV', 'images/pic0001.jpg', 269.00)",
@@ -46,11 +61,6 @@ class Setup
 //  "select * from ProductTable",
 
 
-  "drop table StockTable",
-  "create table StockTable ("+
-      "productNo      Char(4)," +
-      "stockLevel     Integer)",
-
   "insert into StockTable values ( '0001',  90 )",
   "insert into StockTable values ( '0002',  20 )",
   "insert into StockTable values ( '0003',  33 )",
@@ -64,8 +74,13 @@ class Setup
 
  };
 
+  private static final int BATCH        = 1000;    // Rows per batch
+  private static final int COMMIT_EVERY = 20000;   // Rows per commit
+  private static final int REPORT_EVERY = 100000;  // Rows per progress
+
   public static void main(String[] args)
   {
+    String     catalogue = args.length > 0 ? args[0] : null;
     Connection theCon    = null;      // Connection to database
     DBAccess   dbDriver  = null;
     DBAccessFactory.setAction("Create");
@@ -74,6 +89,11 @@ class Setup
     {
       dbDriver = (new DBAccessFactory()).getNewDBAccess();
       dbDriver.loadDriver();
+      if ( ! dbDriver.usesDatabase() )
+      {
+        setUpWithoutDatabase( dbDriver, catalogue );
+        return;
+      }
       theCon  = DriverManager.getConnection
                   ( dbDriver.urlOfDatabase(), 
                     dbDriver.username(), 
@@ -104,6 +124,11 @@ class Setup
     // execute SQL commands to create table, insert data
     for ( String sqlStatement : sqlStatements )
     {
+      if ( sqlStatement.equals( "*i" ) && catalogue != null )
+      {
+        importCatalogue( theCon, catalogue );   // Instead of test data
+        break;
+      }
       try
       {
         System.out.println( sqlStatement );
@@ -132,6 +157,12 @@ class Setup
                  case '-' :
                    theCon.setAutoCommit( false );
                    break;
+                 case 'm' :
+                   SchemaMigration.migrate( theCon );
+                   break;
+                 case 'j' :
+                   StockJournal.discard( StockJournal.NAME );
+                   break;
                 }
               break;
            default :
@@ -157,6 +188,226 @@ class Setup
   }
 
 
+  /**
+   * The stock list is held in memory or in a file of its own,
+   *  it starts again with the demo products
+   * @param dbDriver  Access to where the stock list is held
+   * @param catalogue Catalogue file to import, not possible here
+   */
+  private static void setUpWithoutDatabase( DBAccess dbDriver,
+                                            String catalogue )
+  {
+    if ( catalogue != null )
+      System.out.println( "Can not import " + catalogue +
+                          ", the stock list is not held in a database" );
+    if ( dbDriver.discard() )
+      System.out.println( "Stock list reset to the demo products" );
+    else
+      System.err.println( "Could not remove the stock list file" );
+  }
+
+  /**
+   * Load the products in a catalogue file using batches of
+   *  prepared inserts, committed every COMMIT_EVERY rows.
+   *  Lines that can not be read are reported and skipped.
+   * @param theCon Connection to the database
+   * @param file   Catalogue file name
+   */
+  private static void importCatalogue( Connection theCon, String file )
+  {
+    System.out.println( "Import catalogue " + file );
+    char sep   = file.endsWith( ".tsv" ) ? '\t' : ',';
+    long    start  = System.nanoTime();
+    long    rows   = 0, bad = 0, line = 0;
+    boolean loaded = false;                     // All rows committed
+    try ( BufferedReader in = Files.newBufferedReader( Paths.get( file ),
+                                          StandardCharsets.UTF_8 );
+          PreparedStatement product = theCon.prepareStatement(
+            "insert into ProductTable values ( ?, ?, ?, ? )" );
+          PreparedStatement stock   = theCon.prepareStatement(
+            "insert into StockTable values ( ?, ? )" ) )
+    {
+      theCon.setAutoCommit( false );
+      keys( theCon, false );                    // Faster, checked after
+      String text;
+      while ( ( text = in.readLine() ) != null )
+      {
+        line++;
+        if ( text.isBlank() ) continue;
+        List<String> f = fields( text, sep );
+        try
+        {
+          String pNum  = f.get(0).trim();
+          double price = Double.parseDouble( f.get(2).trim() );
+          int    level = Integer.parseInt( f.get(3).trim() );
+          String pic   = f.size() > 4 ? f.get(4).trim()
+                                      : "images/Pic" + pNum + ".jpg";
+          product.setString( 1, pNum );
+          product.setString( 2, f.get(1) );
+          product.setString( 3, pic );
+          product.setDouble( 4, price );
+          product.addBatch();
+          stock.setString( 1, pNum );
+          stock.setInt( 2, level );
+          stock.addBatch();
+        } catch ( IndexOutOfBoundsException | NumberFormatException e )
+        {
+          if ( line > 1 || bad > 0 )            // Not a heading
+            System.out.printf( "line %d skipped: %s%n", line, text );
+          bad++;
+          continue;
+        }
+
+        rows++;
+        if ( rows % BATCH == 0 )
+        {
+          product.executeBatch();               // Products before
+          stock.executeBatch();                 //  their stock
+        }
+        if ( rows % COMMIT_EVERY == 0 )
+          theCon.commit();
+        if ( rows % REPORT_EVERY == 0 )
+          System.out.printf( "%,d rows %,.0f rows/s%n",
+                             rows, rate( rows, start ) );
+      }
+      product.executeBatch();
+      stock.executeBatch();
+      theCon.commit();
+      loaded = true;
+      System.out.printf( "%,d rows loaded, building indexes%n", rows );
+      keys( theCon, true );
+      theCon.commit();
+      theCon.setAutoCommit( true );
+      System.out.printf( "Imported %,d rows (%d skipped) in %.1fs " +
+                         "%,.0f rows/s%n",
+                         rows, bad, ( System.nanoTime() - start ) / 1e9,
+                         rate( rows, start ) );
+    } catch ( IOException | SQLException e )
+    {
+      if ( loaded )
+        System.out.println( "Import loaded all " + rows + " rows," +
+                            " but the keys could not be added\n" +
+                            e.getMessage() );
+      else
+        System.out.println( "Import failed at line " + line +
+                            " (rows after the last commit are not" +
+                            " loaded)\n" + e.getMessage() );
+      try
+      {
+        theCon.rollback();
+        restoreKeys( theCon );
+      } catch ( SQLException ex )
+      {
+        System.err.println( "** ProductTable and StockTable are left" +
+                            " without their keys **\n" + ex.getMessage() +
+                            "\nRemove the rows with the same product" +
+                            " number and run Setup again" );
+        System.exit( -1 );
+      }
+    }
+  }
+
+  /**
+   * Add the keys of the tables again if they were removed
+   *  by an import that did not finish
+   * @param theCon Connection to the database
+   * @throws SQLException if the keys can not be added
+   */
+  private static void restoreKeys( Connection theCon )
+          throws SQLException
+  {
+    DatabaseMetaData md = theCon.getMetaData();
+    boolean has;
+    try ( ResultSet rs = md.getPrimaryKeys( null, null, "PRODUCTTABLE" ) )
+    {
+      has = rs.next();
+    }
+    if ( ! has )                                // Removing is one
+    {                                           //  transaction, so
+      keys( theCon, true );                     //  all or none
+      theCon.commit();
+      System.out.println( "Keys of the tables added again" );
+    }
+  }
+
+  /**
+   * Remove or add the keys of the tables, so that while loading
+   *  the indexes are not changed for every row, but are built
+   *  once the rows are loaded (which also checks them)
+   * @param theCon Connection to the database
+   * @param add    true to add the keys, false to remove them
+   * @throws SQLException if a key is broken by the rows loaded
+   */
+  private static void keys( Connection theCon, boolean add )
+          throws SQLException
+  {
+    String[] sql = add
+      ? new String[] {
+          "alter table ProductTable add constraint ProductTable_PK " +
+              "primary key (productNo)",
+          "alter table StockTable add constraint StockTable_PK " +
+              "primary key (productNo)",
+          "alter table StockTable add constraint StockTable_FK " +
+              "foreign key (productNo) references ProductTable (productNo)" }
+      : new String[] {
+          "alter table StockTable drop constraint StockTable_FK",
+          "alter table StockTable drop constraint StockTable_PK",
+          "alter table ProductTable drop constraint ProductTable_PK" };
+    try ( Statement stmt = theCon.createStatement() )
+    {
+      for ( String s : sql )
+        stmt.execute( s );
+    }
+  }
+
+  private static double rate( long rows, long start )
+  {
+    return rows / Math.max( 1e-9, ( System.nanoTime() - start ) / 1e9 );
+  }
+
+  /**
+   * Split a line of a catalogue file into its fields,
+   *  a field in double quotes may contain the separator
+   *  ("" inside quotes is a single ")
+   * @param text A line
+   * @param sep  Separator
+   * @return The fields
+   */
+  private static List<String> fields( String text, char sep )
+  {
+    List<String>  res    = new ArrayList<>( 5 );
+    StringBuilder field  = new StringBuilder();
+    boolean       quoted = false;
+    for ( int i = 0; i < text.length(); i++ )
+    {
+      char c = text.charAt( i );
+      if ( quoted )
+      {
+        if ( c == '"' && i+1 < text.length() && text.charAt( i+1 ) == '"' )
+        {
+          field.append( '"' );
+          i++;
+        } else if ( c == '"' )
+        {
+          quoted = false;
+        } else {
+          field.append( c );
+        }
+      } else if ( c == '"' )
+      {
+        quoted = true;
+      } else if ( c == sep )
+      {
+        res.add( field.toString() );
+        field.setLength( 0 );
+      } else {
+        field.append( c );
+      }
+    }
+    res.add( field.toString() );
+    return res;
+  }
+
   private static void query( Statement stmt, String url, String stm )
   {
     try
@@ -3,12 +3,14 @@ package clients.backDoor;
 import catalogue.Basket;
 import catalogue.BetterBasket;
 import catalogue.Product;
+import catalogue.ProductInfo;
 import debug.DEBUG;
 import middle.MiddleFactory;
 import middle.StockException;
 import middle.StockReadWriter;
 
 import java.util.Observable;
+import java.util.Optional;
 
 /**
  * Implements the Model of the back door client
@@ -68,9 +70,11 @@ public class BackDoorModel extends Observable
     pn  = productNum.trim();                    // Product no.
     try
     {                 //  & quantity
-      if ( theStock.exists( pn ) )              // Stock Exists?
+      Optional<ProductInfo> found =             // One request
+        theStock.lookup( pn );                  //  for all details
+      if ( found.isPresent() )                  // Stock Exists?
       {                                         // T
-        Product pr = theStock.getDetails( pn ); //  Product
+        Product pr = found.get();               //  Product
         theAction =                             //   Display 
           String.format( "%s : %7.2f (%2d) ",   //
           pr.getDescription(),                  //    description
@@ -2,10 +2,12 @@ package clients.cashier;
 
 import catalogue.Basket;
 import catalogue.Product;
+import catalogue.ProductInfo;
 import debug.DEBUG;
 import middle.*;
 
 import java.util.Observable;
+import java.util.Optional;
 
 /**
  * Implements the Model of the cashier client
@@ -64,9 +66,11 @@ public class CashierModel extends Observable
     int    amount  = 1;                         //  & quantity
     try
     {
-      if ( theStock.exists( pn ) )              // Stock Exists?
+      Optional<ProductInfo> found =             // One request
+        theStock.lookup( pn );                  //  for all details
+      if ( found.isPresent() )                  // Stock Exists?
       {                                         // T
-        Product pr = theStock.getDetails(pn);   //  Get details
+        Product pr = found.get();               //  Get details
         if ( pr.getQuantity() >= amount )       //  In stock?
         {                                       //  T
           theAction =                           //   Display 
@@ -100,55 +104,61 @@ public class CashierModel extends Observable
   public void doBuy()
   {
     String theAction = "";
-    int    amount  = 1;                         //  & quantity
-    try
-    {
-      if ( theState != State.checked )          // Not checked
-      {                                         //  with customer
-        theAction = "Check if OK with customer first";
-      } else {
-        boolean stockBought =                   // Buy
-          theStock.buyStock(                    //  however
-            theProduct.getProductNum(),         //  may fail              
-            theProduct.getQuantity() );         //
-        if ( stockBought )                      // Stock bought
-        {                                       // T
-          makeBasketIfReq();                    //  new Basket ?
-          theBasket.add( theProduct );          //  Add to bought
-          theAction = "Purchased " +            //    details
-                  theProduct.getDescription();  //
-        } else {                                // F
-          theAction = "!!! Not in stock";       //  Now no stock
-        }
-      }
-    } catch( StockException e )
-    {
-      DEBUG.error( "%s\n%s", 
-            "CashierModel.doBuy", e.getMessage() );
-      theAction = e.getMessage();
+    if ( theState != State.checked )            // Not checked
+    {                                           //  with customer
+      theAction = "Check if OK with customer first";
+    } else {                                    // Stock bought
+      makeBasketIfReq();                        //  new Basket ?
+      theBasket.add( theProduct );              //  Add to bought
+      theAction = "Purchased " +                //    details
+              theProduct.getDescription();      //  at doBought
     }
     theState = State.process;                   // All Done
     setChanged(); notifyObservers(theAction);
   }
   
   /**
-   * Customer pays for the contents of the basket
+   * Customer pays for the contents of the basket.
+   * The stock for the whole basket is bought in one transaction,
+   *  if some lines are no longer in stock nothing is bought and
+   *  those lines are removed from the basket.
    */
   public void doBought()
   {
     String theAction = "";
-    int    amount  = 1;                       //  & quantity
     try
     {
       if ( theBasket != null &&
            theBasket.size() >= 1 )            // items > 1
       {                                       // T
+        boolean[] bought =                    //  Buy all
+          theStock.buyStock( theBasket );     //   or nothing
+        String notInStock = "";
+        for ( int i = bought.length-1; i >= 0; i-- )
+        {
+          if ( ! bought[i] )                  //  Line failed
+          {
+            notInStock = " " +
+              theBasket.remove(i).getDescription() + notInStock;
+          }
+        }
+        if ( ! notInStock.isEmpty() )         //  Not bought
+        {
+          theAction = "!!! Not in stock:" + notInStock;
+          setChanged(); notifyObservers(theAction);
+          return;                             //  Try again
+        }
         theOrder.newOrder( theBasket );       //  Process order
         theBasket = null;                     //  reset
       }                                       //
       theAction = "Next customer";            // New Customer
       theState = State.process;               // All Done
       theBasket = null;
+    } catch( StockException e )
+    {
+      DEBUG.error( "%s\n%s", 
+            "CashierModel.doBought", e.getMessage() );
+      theAction = e.getMessage();
     } catch( OrderException e )
     {
       DEBUG.error( "%s\n%s", 
@@ -1,7 +1,9 @@
 package clients.customer;
 
 import catalogue.Basket;
+import catalogue.ImageCache;
 import catalogue.Product;
+import catalogue.ProductInfo;
 import debug.DEBUG;
 import middle.MiddleFactory;
 import middle.OrderProcessing;
@@ -9,7 +11,10 @@ import middle.StockException;
 import middle.StockReader;
 
 import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Observable;
+import java.util.Optional;
 
 /**
  * Implements the Model of the customer client
@@ -20,9 +25,12 @@ public class CustomerModel extends Observable
 {
   private Product     theProduct = null;          // Current product
   private Basket      theBasket  = null;          // Bought items
+  private List<Product> theMatches = new ArrayList<>(); // Search results
 
   private String      pn = "";                    // Product being processed
 
+  private static final int MATCHES = 10;          // Search results shown
+
   private StockReader     theStock     = null;
   private OrderProcessing theOrder     = null;
   private ImageIcon       thePic       = null;
@@ -53,6 +61,15 @@ public class CustomerModel extends Observable
     return theBasket;
   }
 
+  /**
+   * The products found by the last search, not in the basket
+   * @return the products matching, empty if no search
+   */
+  public List<Product> getMatches()
+  {
+    return theMatches;
+  }
+
   /**
    * Check if the product is in Stock
    * @param productNum The product number
@@ -60,14 +77,17 @@ public class CustomerModel extends Observable
   public void doCheck(String productNum )
   {
     theBasket.clear();                          // Clear s. list
+    theMatches = new ArrayList<>();             //  & search results
     String theAction = "";
     pn  = productNum.trim();                    // Product no.
     int    amount  = 1;                         //  & quantity
     try
     {
-      if ( theStock.exists( pn ) )              // Stock Exists?
+      Optional<ProductInfo> found =             // One request
+        theStock.lookup( pn );                  //  for all details
+      if ( found.isPresent() )                  // Stock Exists?
       {                                         // T
-        Product pr = theStock.getDetails( pn ); //  Product
+        ProductInfo pr = found.get();           //  Product
         if ( pr.getQuantity() >= amount )       //  In stock?
         { 
           theAction =                           //   Display 
@@ -77,15 +97,26 @@ public class CustomerModel extends Observable
               pr.getQuantity() );               //    quantity
           pr.setQuantity( amount );             //   Require 1
           theBasket.add( pr );                  //   Add to basket
-          thePic = theStock.getImage( pn );     //    product
+          thePic = ImageCache.shared()          //   Picture of
+                     .get( pr.getPicture() );   //    product
         } else {                                //  F
           theAction =                           //   Inform
             pr.getDescription() +               //    product not
             " not in stock" ;                   //    in stock
         }
       } else {                                  // F
-        theAction =                             //  Inform Unknown
-          "Unknown product number " + pn;       //  product number
+        List<Product> like =                    //  Search
+          theStock.search( pn, MATCHES );       //   descriptions
+        if ( like.isEmpty() )
+        {
+          theAction =                           //  Inform Unknown
+            "Unknown product number " + pn;     //  product number
+        } else {
+          theAction =                           //  Show products
+            "Products matching " + pn;          //   found, basket
+          theMatches = like;                    //   unchanged
+          thePic = null;
+        }
       }
     } catch( StockException e )
     {
@@ -102,6 +133,7 @@ public class CustomerModel extends Observable
   {
     String theAction = "";
     theBasket.clear();                        // Clear s. list
+    theMatches = new ArrayList<>();           //  & search results
     theAction = "Enter Product Number";       // Set display
     thePic = null;                            // No picture
     setChanged(); notifyObservers(theAction);
@@ -2,12 +2,17 @@ package clients.customer;
 
 import catalogue.Basket;
 import catalogue.BetterBasket;
+import catalogue.Product;
 import clients.Picture;
 import middle.MiddleFactory;
 import middle.StockReader;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.Currency;
+import java.util.Formatter;
+import java.util.List;
+import java.util.Locale;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -124,8 +129,33 @@ public class CustomerView implements Observer
     } else {
       thePicture.set( image );             // Display picture
     }
-    theOutput.setText( model.getBasket().getDetails() );
+    List<Product> matches = model.getMatches();
+    if ( matches.isEmpty() )
+      theOutput.setText( model.getBasket().getDetails() );
+    else
+      theOutput.setText( listOfMatches( matches ) ); // Search results
     theInput.requestFocus();               // Focus is here
   }
 
+  /**
+   * Return the products found by a search, one per line
+   * @param matches The products
+   * @return Product number, description, stock level and price
+   */
+  private String listOfMatches( List<Product> matches )
+  {
+    StringBuilder sb = new StringBuilder(256);
+    Formatter     fr = new Formatter( sb, Locale.UK );
+    String csign = ( Currency.getInstance( Locale.UK ) ).getSymbol();
+    for ( Product pr : matches )
+    {
+      fr.format( "%-7s",      pr.getProductNum() );
+      fr.format( "%-14.14s ", pr.getDescription() );
+      fr.format( "(%3d) ",    pr.getQuantity() );
+      fr.format( "%s%7.2f\n", csign, pr.getPrice() );
+    }
+    fr.close();
+    return sb.toString();
+  }
+
 }
@@ -2,28 +2,51 @@ package clients.shopDisplay;
 
 import debug.DEBUG;
 import middle.MiddleFactory;
+import middle.OrderChanges;
 import middle.OrderException;
+import middle.OrderListener;
 import middle.OrderProcessing;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
+import java.util.TreeMap;
 
-// File is complete but not optimal
-//  Will force update of display every 2 seconds
-//  Could be clever & only ask for an update of the display 
-//   if it really has changed
+// The display is told of each change to an order and only then
+//  asks for the changes since the version of the orders it holds,
+//  a burst of changes gives one update. If it can not be told of
+//  changes it asks every 2 seconds, redrawing only if any were made.
+//  While the order processing system can not be reached it may lose
+//  its listener, so it asks every 2 seconds until it is reached and
+//  has asked to be told of changes again. As it may also be dropped
+//  unseen, it asks again after a minute with nothing told
 
 /**
  * Implements the Model of the display client
  * @author  Mike Smith University of Brighton
- * @version 2.0
+ * @version 2.1
  */
 
 public class DisplayModel extends Observable
 {
+  private static final long POLL    = 2000;     // Not told of changes
+  private static final long REFRESH = 60000;    // In case a change is lost
+
   private OrderProcessing theOrder = null;
 
+  private final Object        theSignal    = new Object();
+  private boolean             theChanged   = true;  // Show at the start
+  private volatile boolean    theListening = false; // Told of changes
+  private final OrderListener theListener  =        // Wakes the thread
+    ( orderNum, state ) -> changed();
+
+  // Copy of the state of each order, lowest order number first
+  private final TreeMap<Integer,String> theOrders = new TreeMap<>();
+  private long           theVersion = -1;       // Of copy, -1 none
+  private OrderException theError   = null;     // Last ask failed
+
   /**
    * Set up initial connection to the order processing system
    * @param mf Factory to return an object to access the order processing system
@@ -38,12 +61,42 @@ public class DisplayModel extends Observable
       // Serious error in system (Should not occure)
       DEBUG.error("ModelOfDisplay: " + e.getMessage() );
     }
+    listen();
     new Thread( () -> backgroundRun() ).start();
     
   }
+
+  /**
+   * Ask to be told of changes, polling if that fails
+   */
+  private void listen()
+  {
+    try
+    {
+      theOrder.addOrderListener( theListener );
+      theListening = true;
+    } catch ( Exception e )
+    {
+      DEBUG.traceA( "ModelOfDisplay: not told of changes, will poll\n%s",
+                    e.getMessage() );
+    }
+  }
+
+  /**
+   * An order has changed state, wake the background thread
+   */
+  private void changed()
+  {
+    synchronized ( theSignal )
+    {
+      theChanged = true;
+      theSignal.notify();
+    }
+  }
   
  /**
-   * Run as a thread in background to continually update the display
+   * Run as a thread in background to update the display
+   *  when an order changes state
    */
   public void backgroundRun()
   {
@@ -51,9 +104,21 @@ public class DisplayModel extends Observable
     {
      try
       {
-        Thread.sleep(2000);
-        DEBUG.trace( "ModelOfDisplay call view" );
-        setChanged(); notifyObservers();
+        boolean quiet;
+        synchronized ( theSignal )
+        {
+          if ( ! theChanged )
+            theSignal.wait( theListening ? REFRESH : POLL );
+          quiet = ! theChanged;
+          theChanged = false;                    // Seen all so far
+        }
+        if ( quiet && theListening )
+          listen();                              // In case dropped
+        if ( refresh() )
+        {
+          DEBUG.trace( "ModelOfDisplay call view" );
+          setChanged(); notifyObservers();
+        }
       }
       catch ( InterruptedException e )
       {
@@ -64,11 +129,43 @@ public class DisplayModel extends Observable
     }
   }
   
+ /**
+   * Bring the copy of the orders up to date
+   * @return true if the display should be redrawn
+   */
+  private synchronized boolean refresh()
+  {
+    try
+    {
+      OrderChanges changes = theOrder.changesSince( theVersion );
+      if ( changes.isUnchanged() && theError == null )
+        return false;                            // Nothing to draw
+      changes.applyTo( theOrders );
+      theVersion = changes.getVersion();
+      if ( theError != null && ! theListening )
+        listen();                                // Reached again
+      theError   = null;
+    } catch ( OrderException e )
+    {
+      theError     = e;
+      theListening = false;                      // May be lost, poll
+    }
+    return true;
+  }
+
  // Will be called by the viewOfDisplay
  //   when it is told that the view has changed
  public synchronized Map<String, List<Integer> > getOrderState()
        throws OrderException
  {
-   return theOrder.getOrderState();
+   if ( theError != null )
+     throw theError;
+   Map < String, List<Integer> > res = new HashMap<>();
+   res.put( "Waiting",       new ArrayList<>() );
+   res.put( "BeingPicked",   new ArrayList<>() );
+   res.put( "ToBeCollected", new ArrayList<>() );
+   for ( Map.Entry<Integer,String> e : theOrders.entrySet() )
+     res.get( e.getValue() ).add( e.getKey() );
+   return res;
  }
 }
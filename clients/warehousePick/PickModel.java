@@ -25,6 +25,8 @@ public class PickModel extends Observable
   
   private StateOf         worker   = new StateOf();
 
+  private static final long WAIT = 30000;   // ms to wait for an order
+
   /*
    * Construct the model of the warehouse pick client
    * @param mf The factory to create the connection objects
@@ -70,42 +72,64 @@ public class PickModel extends Observable
     {
       assert held;
       held = false;
+      notifyAll();                      // Wake awaitFree
+    }
+
+    /**
+     * Wait until the lock is free
+     * @throws InterruptedException if interrupted
+     */
+    public synchronized void awaitFree()
+           throws InterruptedException
+    {
+      while ( held )
+        wait();
     }
 
   }
   
   /**
-   * Method run in a separate thread to check if there
-   * is a new order waiting to be picked and we have
-   * nothing to do.
+   * Method run in a separate thread to wait for a new
+   * order to be picked when we have nothing to do.
+   * The order processing system holds the request until
+   * an order arrives, so an idle picker makes few requests.
    */
   private void checkForNewOrder()
   {
     while ( true )
     {
+      boolean isFree = false;
       try
       {
-        boolean isFree = worker.claim();     // Are we free
+        worker.awaitFree();                  // Until nothing to do
+        isFree = worker.claim();             // Are we free
         if ( isFree )                        // T
         {                                    //
           Basket sb = 
-            theOrder.getOrderToPick();       //  Order 
+            theOrder.getOrderToPick( WAIT ); //  Wait for order
           if ( sb != null )                  //  Order to pick
           {                                  //  T
             theBasket.set(sb);               //   Working on
             theAction = "Order to pick";     //   what to do
+            setChanged(); notifyObservers(theAction);
           } else {                           //  F
-            worker.free();                   //  Free
-            theAction = "";                  // 
+            worker.free();                   //  Free, ask again
           }
-          setChanged(); notifyObservers(theAction);
         }                                    // 
-        Thread.sleep(2000);                  // idle
       } catch ( Exception e )
       {
         DEBUG.error("%s\n%s",                // Eek!
            "BackGroundCheck.run()\n%s",
            e.getMessage() );
+        if ( isFree && theBasket.get() == null )
+          worker.free();                     // Not picking
+        try
+        {
+          Thread.sleep(2000);                // Before trying again
+        } catch ( InterruptedException ie )
+        {
+          return;
+        }
       }
     }
   }
@@ -0,0 +1,105 @@
+package dbAccess;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+  * A compact set of strings that may wrongly say a string is in it,
+  *  but never wrongly says a string is not in it (a Bloom filter).
+  * Used to answer at once that a product number is not known,
+  *  without asking the database.
+  * Strings can be added while others are testing, no locks are held.
+  * @version 1.0
+  */
+
+public class BloomFilter
+{
+  private final AtomicLongArray theBits;
+  private final long            theSize;         // Bits
+  private final int             theHashes;       // Bits set per string
+
+  /**
+   * Create a filter
+   * @param expected Number of strings to be added
+   * @param falsePositive Chance of wrongly saying a string is in it
+   */
+  public BloomFilter( long expected, double falsePositive )
+  {
+    long n = Math.max( 1, expected );
+    long m = (long) Math.ceil( -n * Math.log( falsePositive ) /
+                               ( Math.log( 2 ) * Math.log( 2 ) ) );
+    theSize   = Math.max( 64, m );
+    theHashes = Math.max( 1, (int) Math.round( (double) theSize / n *
+                                               Math.log( 2 ) ) );
+    theBits   = new AtomicLongArray( (int) ( ( theSize + 63 ) / 64 ) );
+  }
+
+  /**
+   * Add a string
+   * @param s The string
+   */
+  public void add( String s )
+  {
+    long h = hash( s );
+    int  h1 = (int) h, h2 = (int) ( h >>> 32 );
+    for ( int i = 0; i < theHashes; i++ )
+    {
+      long bit  = Math.floorMod( h1 + (long) i * h2, theSize );
+      int  word = (int) ( bit >>> 6 );
+      long mask = 1L << bit;
+      long old;
+      do
+      {
+        old = theBits.get( word );
+        if ( ( old & mask ) != 0 ) break;
+      } while ( ! theBits.compareAndSet( word, old, old | mask ) );
+    }
+  }
+
+  /**
+   * Test if a string may have been added
+   * @param s The string
+   * @return false if the string has certainly not been added
+   */
+  public boolean mightContain( String s )
+  {
+    long h = hash( s );
+    int  h1 = (int) h, h2 = (int) ( h >>> 32 );
+    for ( int i = 0; i < theHashes; i++ )
+    {
+      long bit = Math.floorMod( h1 + (long) i * h2, theSize );
+      if ( ( theBits.get( (int) ( bit >>> 6 ) ) & ( 1L << bit ) ) == 0 )
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Memory used by the filter
+   * @return bytes
+   */
+  public long bytes()
+  {
+    return theBits.length() * 8L;
+  }
+
+  /**
+   * 64 bit hash of the string (FNV-1a, then mixed), giving the
+   *  two 32 bit hashes the bits tested are made from
+   * @param s The string
+   * @return hash
+   */
+  private static long hash( String s )
+  {
+    long h = 0xcbf29ce484222325L;
+    for ( byte b : s.getBytes( StandardCharsets.UTF_8 ) )
+    {
+      h ^= b;
+      h *= 0x100000001b3L;
+    }
+    h ^= ( h >>> 33 );
+    h *= 0xff51afd7ed558ccdL;
+    h ^= ( h >>> 33 );
+    return h;
+  }
+}
@@ -0,0 +1,203 @@
+package dbAccess;
+
+import debug.DEBUG;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+  * A bounded pool of connections to the database.
+  * Connections are borrowed for the duration of a single request,
+  *  so many requests can be processed at the same time.
+  * Connections idle for longer than the driver's idle time are closed,
+  *  and a connection that has been idle for a while is checked
+  *  before it is handed out again.
+  * @version 1.0
+  */
+
+public class ConnectionPool
+{
+  private static final long BORROW_WAIT   = 10000;  // ms to wait
+  private static final long VALIDATE_IDLE = 1000;   // ms before check
+
+  // One pool per database, shared by all the users of that database
+  private static final Map<String,ConnectionPool> thePools = new HashMap<>();
+
+  private final DBAccess  theDriver;
+  private final Semaphore thePermits;               // Connections free
+  private final LinkedBlockingDeque<PooledConnection> theIdle
+                          = new LinkedBlockingDeque<>();
+  private final AtomicLong theHits   = new AtomicLong();  // Statement
+  private final AtomicLong theMisses = new AtomicLong();  //  cache
+
+  /**
+   * Return the pool of connections to the database
+   *  creating it (with 1 connection open) if needed.
+   * When the pool is created the tables in the database
+   *  are upgraded to the latest version.
+   * The driver must already be loaded.
+   * @param dbDriver Access to the database
+   * @return The pool of connections for the database
+   * @throws SQLException if can not connect to the database
+   */
+  public static ConnectionPool of( DBAccess dbDriver )
+         throws SQLException
+  {
+    synchronized ( thePools )
+    {
+      ConnectionPool pool = thePools.get( dbDriver.urlOfDatabase() );
+      if ( pool == null )
+      {
+        pool = new ConnectionPool( dbDriver );
+        try ( PooledConnection con = pool.borrow() ) // Check works
+        {
+          SchemaMigration.migrateOnce( con.getConnection() );
+        }
+        thePools.put( dbDriver.urlOfDatabase(), pool );
+      }
+      return pool;
+    }
+  }
+
+  private ConnectionPool( DBAccess dbDriver )
+  {
+    theDriver  = dbDriver;
+    thePermits = new Semaphore( dbDriver.poolSize(), true );
+    DEBUG.trace( "ConnectionPool: %s size %d",
+                 dbDriver.urlOfDatabase(), dbDriver.poolSize() );
+  }
+
+  /**
+   * Borrow a connection, waiting if they are all in use.
+   * The connection is returned to the pool when it is closed.
+   * @return A connection to the database
+   * @throws SQLException if no connection can be made
+   */
+  public PooledConnection borrow() throws SQLException
+  {
+    try
+    {
+      if ( ! thePermits.tryAcquire( BORROW_WAIT, TimeUnit.MILLISECONDS ) )
+        throw new SQLException( "No database connection free" );
+    } catch ( InterruptedException e )
+    {
+      Thread.currentThread().interrupt();
+      throw new SQLException( "Interrupted waiting for connection" );
+    }
+
+    try
+    {
+      long now = System.currentTimeMillis();
+      evictIdle( now );
+      PooledConnection pc;
+      while ( ( pc = theIdle.pollFirst() ) != null )  // Most recent
+      {
+        if ( pc.idleFor( now ) < VALIDATE_IDLE ||
+             pc.getConnection().isValid( theDriver.validationTimeout() ) )
+        {
+          pc.lend();
+          return pc;
+        }
+        DEBUG.trace( "ConnectionPool: discard invalid connection" );
+        pc.discard();
+      }
+      pc = new PooledConnection( this, open() );
+      pc.lend();
+      return pc;
+    } catch ( SQLException | RuntimeException e )
+    {
+      thePermits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Return a borrowed connection to the pool.
+   * A connection left in a transaction is rolled back,
+   *  a closed connection is thrown away.
+   * @param pc The connection
+   */
+  void release( PooledConnection pc )
+  {
+    try
+    {
+      Connection con = pc.getConnection();
+      if ( con.isClosed() )
+      {
+        pc.discard();
+      } else {
+        if ( ! con.getAutoCommit() )
+        {
+          con.rollback();
+          con.setAutoCommit( true );
+        }
+        pc.touch();
+        theIdle.offerFirst( pc );
+      }
+    } catch ( SQLException e )
+    {
+      pc.discard();
+    } finally {
+      thePermits.release();
+    }
+  }
+
+  /**
+   * Close connections that have not been used for a while.
+   * The least recently used connections are at the end of the queue.
+   * @param now The current time in ms
+   */
+  private void evictIdle( long now )
+  {
+    PooledConnection pc;
+    while ( ( pc = theIdle.peekLast() ) != null &&
+            pc.idleFor( now ) > theDriver.maxIdleTime() )
+    {
+      if ( theIdle.removeLastOccurrence( pc ) )
+      {
+        DEBUG.trace( "ConnectionPool: close idle connection" );
+        pc.discard();
+      }
+    }
+  }
+
+  /**
+   * Number of times a cached prepared statement was reused
+   * @return cache hits
+   */
+  public long statementCacheHits()
+  {
+    return theHits.get();
+  }
+
+  /**
+   * Number of times a statement had to be prepared by the database
+   * @return cache misses
+   */
+  public long statementCacheMisses()
+  {
+    return theMisses.get();
+  }
+
+  void countStatement( boolean hit )
+  {
+    ( hit ? theHits : theMisses ).incrementAndGet();
+  }
+
+  private Connection open() throws SQLException
+  {
+    Connection con = DriverManager.getConnection
+                       ( theDriver.urlOfDatabase(),
+                         theDriver.username(),
+                         theDriver.password() );
+    con.setAutoCommit( true );
+    return con;
+  }
+}
@@ -5,12 +5,16 @@ package dbAccess;
   * @author  Mike Smith University of Brighton
   * @version 2.0
   */
- 
+
 /**
  * Base class that defines the access to the database driver
  */
 public class DBAccess
 {
+  private int  thePoolSize    =                      // Connections
+    Math.max( 2, Runtime.getRuntime().availableProcessors() );
+  private long theMaxIdleTime = 60000;               // ms
+
   public void loadDriver() throws Exception
   {
     throw new RuntimeException("No driver");
@@ -30,4 +34,67 @@ public class DBAccess
   {
     return "";
   }
+
+  /**
+   * Is the stock list held in a database
+   * @return false if there is no database to connect to
+   */
+  public boolean usesDatabase()
+  {
+    return true;
+  }
+
+  /**
+   * Remove the stock list, when it is not held in a database
+   * @return true if removed
+   */
+  public boolean discard()
+  {
+    return false;
+  }
+
+  /**
+   * Maximum number of connections that may be open at once
+   * @return size of the connection pool
+   */
+  public int poolSize()
+  {
+    return thePoolSize;
+  }
+
+  /**
+   * Set the maximum number of connections that may be open at once
+   * @param size size of the connection pool
+   */
+  public void setPoolSize( int size )
+  {
+    thePoolSize = size;
+  }
+
+  /**
+   * Time an unused connection is kept open before it is closed
+   * @return idle time in milliseconds
+   */
+  public long maxIdleTime()
+  {
+    return theMaxIdleTime;
+  }
+
+  /**
+   * Set the time an unused connection is kept open before it is closed
+   * @param millis idle time in milliseconds
+   */
+  public void setMaxIdleTime( long millis )
+  {
+    theMaxIdleTime = millis;
+  }
+
+  /**
+   * Time allowed to check that a pooled connection still works
+   * @return timeout in seconds
+   */
+  public int validationTimeout()
+  {
+    return 2;
+  }
 }
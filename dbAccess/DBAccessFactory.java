@@ -6,6 +6,9 @@
 package dbAccess;
 
 import debug.DEBUG;
+import middle.StockException;
+import middle.StockReadWriter;
+import middle.StockReader;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -25,12 +28,22 @@ public class DBAccessFactory
   private static String theAction   = "";
   private static String theDataBase = "";
   private static String theOS       = "";
+  private static int    thePoolSize = 0;    // 0 use driver default
 
   public static void setAction( String name )
   {
     theAction = name;
   }
 
+  /**
+   * Set the maximum number of pooled connections to the database
+   * @param size Number of connections, 0 for the driver default
+   */
+  public static void setPoolSize( int size )
+  {
+    thePoolSize = size;
+  }
+
   private static String setEnvironment()
   {
     theDataBase  = fileToString( "DataBase.txt" ) + theAction;
@@ -47,6 +60,14 @@ public class DBAccessFactory
    * @return An object to provide system level access to the database
    */
   public DBAccess getNewDBAccess()
+  {
+    DBAccess dbAccess = makeDBAccess();
+    if ( thePoolSize > 0 )
+      dbAccess.setPoolSize( thePoolSize );
+    return dbAccess;
+  }
+
+  private DBAccess makeDBAccess()
   {
     setEnvironment();
     DEBUG.traceA("Using [%s] as database type\n", theDataBase );
@@ -65,6 +86,14 @@ public class DBAccessFactory
        case "mySQL" :
        case "mySQLCreate" :
          return new LinuxAccess();       // MySQL Linux
+
+       case "Memory" :
+       case "MemoryCreate" :
+         return new NoDBAccess( null );  // No database used
+
+       case "Mapped" :
+       case "MappedCreate" :
+         return new NoDBAccess( MappedStockRW.FILE ); // Own file
          
        default:
          DEBUG.error("DataBase [%s] not known\n", theDataBase );
@@ -73,6 +102,50 @@ public class DBAccessFactory
     return new DBAccess();               // Unknown
   }
   
+  /**
+   * Return an object to read the stock list,
+   *  held in the database named in DataBase.txt
+   * @return An object to read the stock list
+   * @throws StockException if can not access the stock list
+   */
+  public StockReader getNewStockReader() throws StockException
+  {
+    setEnvironment();
+    switch ( theDataBase )
+    {
+       case "Memory" :
+         return MemoryStockRW.shared();  // Held in memory
+
+       case "Mapped" :
+         return MappedStockRW.shared();  // Held in mapped file
+
+       default:
+         return new StockR();            // Relational database
+    }
+  }
+
+  /**
+   * Return an object to read and change the stock list,
+   *  held in the database named in DataBase.txt
+   * @return An object to read/write the stock list
+   * @throws StockException if can not access the stock list
+   */
+  public StockReadWriter getNewStockReadWriter() throws StockException
+  {
+    setEnvironment();
+    switch ( theDataBase )
+    {
+       case "Memory" :
+         return MemoryStockRW.shared();  // Held in memory
+
+       case "Mapped" :
+         return MappedStockRW.shared();  // Held in mapped file
+
+       default:
+         return new StockRW();           // Relational database
+    }
+  }
+
   /**
    * return as a string the contents of a file
    * stripping out newline and carriage returns from contents
@@ -0,0 +1,39 @@
+package dbAccess;
+
+import catalogue.ProductInfo;
+
+/**
+  * The products the shop starts with when the stock list
+  *  is not held in a database. The same as those set up by Setup.
+  * @version 1.0
+  */
+
+class DemoCatalogue
+{
+  private static final Object[][] theProducts = {
+    { "0001", "40 inch LED HD TV", "images/pic0001.jpg", 269.00, 90 },
+    { "0002", "DAB Radio",         "images/pic0002.jpg",  29.99, 20 },
+    { "0003", "Toaster",           "images/pic0003.jpg",  19.99, 33 },
+    { "0004", "Watch",             "images/pic0004.jpg",  29.99, 10 },
+    { "0005", "Digital Camera",    "images/pic0005.jpg",  89.99, 17 },
+    { "0006", "MP3 player",        "images/pic0006.jpg",   7.99, 15 },
+    { "0007", "32Gb USB2 drive",   "images/pic0007.jpg",   6.99,  1 },
+  };
+
+  /**
+   * Return the products and their stock levels
+   * @return The products
+   */
+  static ProductInfo[] products()
+  {
+    ProductInfo[] res = new ProductInfo[ theProducts.length ];
+    for ( int i = 0; i < theProducts.length; i++ )
+    {
+      Object[] p = theProducts[i];
+      res[i] = new ProductInfo( (String) p[0], (String) p[1],
+                                (Double) p[3], (Integer) p[4],
+                                (String) p[2] );
+    }
+    return res;
+  }
+}
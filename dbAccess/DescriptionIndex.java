@@ -0,0 +1,195 @@
+package dbAccess;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+  * An index of the words in the descriptions of products,
+  *  to find products as a customer types part of a description.
+  * Each word of the search must start a word of the description,
+  *  products with more whole words matched come first, then those
+  *  with the lowest product numbers. Products are held in product
+  *  number order for each word, so the search can stop as soon as
+  *  no later product could be better.
+  * Kept in memory, and changed as products are added or changed.
+  * @version 1.0
+  */
+
+public class DescriptionIndex
+{
+  /**
+   * The products with a word in their description
+   */
+  private static final class Word
+  {
+    private final NavigableSet<String> products =
+      new ConcurrentSkipListSet<>();
+    private volatile int size = 0;                  // Set size is slow
+  }
+
+  // Word -> products with the word in their description
+  private final ConcurrentSkipListMap<String,Word> theWords =
+    new ConcurrentSkipListMap<>();
+  // Product number -> description indexed
+  private final ConcurrentHashMap<String,String> theDescriptions =
+    new ConcurrentHashMap<>();
+
+  /**
+   * Index the description of a product, replacing its old description
+   * @param pNum        The product number
+   * @param description Its description
+   */
+  public synchronized void put( String pNum, String description )
+  {
+    String old = theDescriptions.put( pNum, description );
+    if ( old != null )
+    {
+      for ( String word : words( old ) )
+      {
+        Word w = theWords.get( word );
+        if ( w != null && w.products.remove( pNum ) && --w.size == 0 )
+          theWords.remove( word );
+      }
+    }
+    for ( String word : words( description ) )
+    {
+      Word w = theWords.computeIfAbsent( word, k -> new Word() );
+      if ( w.products.add( pNum ) )
+        w.size++;
+    }
+  }
+
+  /**
+   * Find the products best matching the search
+   * @param search Words, each the start of a word in the description
+   * @param max    Maximum number of products returned
+   * @return Product numbers, best match first
+   */
+  public List<String> search( String search, int max )
+  {
+    List<String> query = words( search );
+    List<String> res   = new ArrayList<>();
+    if ( query.isEmpty() || max <= 0 )
+      return res;
+
+    // For each word searched for, the words it starts
+    List<Collection<Word>> matches = new ArrayList<>();
+    List<Word>             exact   = new ArrayList<>();
+    int fewest = 0, fewestSize = Integer.MAX_VALUE;
+    for ( String word : query )
+    {
+      Collection<Word> starting =
+        theWords.subMap( word, true, word + Character.MAX_VALUE, true )
+                .values();
+      int size = 0;
+      for ( Word w : starting )
+        size += w.size;
+      if ( size == 0 )
+        return res;                                 // Nothing matches
+      if ( size < fewestSize )
+      {
+        fewest     = matches.size();
+        fewestSize = size;
+      }
+      matches.add( starting );
+      Word whole = theWords.get( word );
+      if ( whole != null )
+        exact.add( whole );
+    }
+
+    // Best max of the products matching every word, kept worst first
+    Comparator<Scored> best =
+      Comparator.comparingInt( ( Scored s ) -> s.score )
+                .thenComparing( s -> s.pNum, Comparator.reverseOrder() );
+    PriorityQueue<Scored> top = new PriorityQueue<>( max + 1, best );
+    for ( String pNum : inOrder( matches.get( fewest ) ) )
+    {
+      boolean all = true;
+      for ( int i = 0; i < matches.size() && all; i++ )
+        all = i == fewest || contains( matches.get( i ), pNum );
+      if ( ! all ) continue;
+
+      int score = 0;                                // Whole words
+      for ( Word whole : exact )
+        if ( whole.products.contains( pNum ) ) score++;
+      top.add( new Scored( pNum, score ) );
+      if ( top.size() > max )
+        top.poll();                                 // Drop worst
+      if ( top.size() == max && top.peek().score == exact.size() )
+        break;                                      // None better later
+    }
+
+    while ( ! top.isEmpty() )
+      res.add( 0, top.poll().pNum );
+    return res;
+  }
+
+  /**
+   * Number of products indexed
+   * @return products
+   */
+  public int size()
+  {
+    return theDescriptions.size();
+  }
+
+  /**
+   * The products with any of the words, in product number order
+   * @param words The words
+   * @return Product numbers
+   */
+  private static NavigableSet<String> inOrder( Collection<Word> words )
+  {
+    if ( words.size() == 1 )
+      return words.iterator().next().products;     // As held
+    NavigableSet<String> res = new TreeSet<>();
+    for ( Word w : words )
+      res.addAll( w.products );
+    return res;
+  }
+
+  private static boolean contains( Collection<Word> words, String pNum )
+  {
+    for ( Word w : words )
+      if ( w.products.contains( pNum ) ) return true;
+    return false;
+  }
+
+  /**
+   * The words of a description or search, in lower case
+   * @param text The text
+   * @return The words
+   */
+  private static List<String> words( String text )
+  {
+    List<String> res = new ArrayList<>();
+    for ( String word : text.toLowerCase( Locale.ROOT )
+                            .split( "[^\\p{L}\\p{N}]+" ) )
+    {
+      if ( ! word.isEmpty() && ! res.contains( word ) )
+        res.add( word );
+    }
+    return res;
+  }
+
+  private static final class Scored
+  {
+    private final String pNum;
+    private final int    score;
+
+    private Scored( String aPNum, int aScore )
+    {
+      pNum  = aPNum;
+      score = aScore;
+    }
+  }
+}
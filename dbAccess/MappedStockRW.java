@@ -0,0 +1,604 @@
+package dbAccess;
+
+import catalogue.Basket;
+import catalogue.ImageCache;
+import catalogue.Product;
+import catalogue.ProductInfo;
+import debug.DEBUG;
+import middle.StockChanges;
+import middle.StockException;
+import middle.StockReadWriter;
+import middle.StockUpdate;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+  * Implements read/write access to a stock list held in a file
+  *  of fixed size records that is mapped into memory.
+  * Products are read straight from the mapped file and stock levels
+  *  are changed in place with compare and set, so no locks are held.
+  * Only the product numbers and descriptions are read when the
+  *  program starts, to find the record of each product and to
+  *  search the descriptions, so it starts at once.
+  * The operating system writes the changed records to the file,
+  *  the file is also forced to disk when the program ends.
+  * Selected by the word Mapped in the file DataBase.txt,
+  *  a new file holds the demonstration products.
+  * @version 1.0
+  */
+
+public class MappedStockRW implements StockReadWriter
+{
+  public  static final String FILE  = "catshop.stock";
+
+  private static final int MAGIC    = 0x43534B31;    // "CSK1"
+  private static final int HEADER   = 16;            // Bytes
+  private static final int RECORD   = 256;           // Bytes
+  private static final int CAPACITY = 1024;          // Records at first
+  private static final long SPIN_LIMIT = 100;        // ms, being written
+
+  // Header
+  private static final int H_MAGIC  = 0;
+  private static final int H_RECORD = 4;
+  private static final int H_USED   = 8;             // Records used
+
+  // Record, the numbers are aligned for compare and set
+  private static final int R_STOCK   = 0;            // int
+  private static final int R_VERSION = 4;            // int, odd if writing
+  private static final int R_PRICE   = 8;            // double
+  private static final int R_NUMBER  = 16;           // short + 22 bytes
+  private static final int R_DESC    = 40;           // short + 78 bytes
+  private static final int R_PICTURE = 120;          // short + 134 bytes
+  private static final int NUMBER_LEN  = 22;
+  private static final int DESC_LEN    = 78;
+  private static final int PICTURE_LEN = 134;
+
+  // Atomic access to the ints in the (big endian) file
+  private static final VarHandle INT =
+    MethodHandles.byteBufferViewVarHandle( int[].class,
+                                           ByteOrder.BIG_ENDIAN );
+
+  private static MappedStockRW theShared = null;
+
+  private final FileChannel theFile;
+  private volatile MappedByteBuffer theMap;          // Whole file
+  private int theCapacity;                           // Records mapped
+
+  // Record number of each product
+  private final ConcurrentHashMap<String,Integer> theSlots =
+    new ConcurrentHashMap<>();
+  private final ConcurrentSkipListMap<String,Integer> theOrder =
+    new ConcurrentSkipListMap<>();             // By product number
+  private final DescriptionIndex theIndex = new DescriptionIndex();
+  // Recent changes, versions start from the time the stock list is
+  //  opened, so that one from an earlier run is not taken as current
+  private final StockChangeLog theChanges =
+    new StockChangeLog( 65536, System.currentTimeMillis() << 20 );
+
+  /**
+   * The stock list shared by all readers and writers
+   * @return The stock list held in the file
+   * @throws StockException if the file can not be opened
+   */
+  public static synchronized MappedStockRW shared()
+         throws StockException
+  {
+    if ( theShared == null )
+      theShared = new MappedStockRW( FILE );
+    return theShared;
+  }
+
+  /**
+   * Open the stock list held in the file, creating it
+   *  with the demonstration products if it does not exist
+   * @param file Name of the file
+   * @throws StockException if the file can not be opened
+   */
+  public MappedStockRW( String file ) throws StockException
+  {
+    try
+    {
+      theFile = FileChannel.open( Paths.get( file ),
+                                  StandardOpenOption.CREATE,
+                                  StandardOpenOption.READ,
+                                  StandardOpenOption.WRITE );
+      boolean created = theFile.size() == 0;
+      long    records = ( theFile.size() - HEADER ) / RECORD;
+      map( (int) Math.max( CAPACITY, records ) );
+      if ( created )
+      {
+        theMap.putInt( H_MAGIC,  MAGIC );
+        theMap.putInt( H_RECORD, RECORD );
+        theMap.putInt( H_USED,   0 );
+        for ( ProductInfo pr : DemoCatalogue.products() )
+          put( pr, pr.getPicture() );
+      } else if ( theMap.getInt( H_MAGIC )  != MAGIC ||
+                  theMap.getInt( H_RECORD ) != RECORD )
+      {
+        throw new StockException( "Not a stock file: " + file );
+      }
+
+      int used = theMap.getInt( H_USED );
+      for ( int slot = 0; slot < used; slot++ )
+      {
+        recover( slot );                        // If left part written
+        String pNum = readString( at( slot ) + R_NUMBER );
+        theSlots.put( pNum, slot );
+        theOrder.put( pNum, slot );
+        theIndex.put( pNum, readString( at( slot ) + R_DESC ) );
+      }
+      DEBUG.trace( "Mapped StockRW: %s %d products", file, used );
+    } catch ( IOException e )
+    {
+      throw new StockException( "Stock file " + file + ": " +
+                                e.getMessage() );
+    }
+    Runtime.getRuntime().addShutdownHook(
+      new Thread( () -> theMap.force(), "MappedStockRW force" ) );
+  }
+
+  /**
+   * Checks if the product exits in the stock list
+   * @param pNum The product number
+   * @return true if exists otherwise false
+   */
+  public boolean exists( String pNum )
+  {
+    return theSlots.containsKey( pNum );
+  }
+
+  /**
+   * Returns details about the product in the stock list.
+   * @param pNum The product number
+   * @return Details in an instance of a Product
+   */
+  public Product getDetails( String pNum )
+         throws StockException
+  {
+    Optional<ProductInfo> pr = lookup( pNum );
+    return pr.isPresent() ? pr.get() : new Product( "0", "", 0.00, 0 );
+  }
+
+  /**
+   * Returns details about many products
+   * @param pNums The product numbers
+   * @return Map of product number to details, in the order asked for
+   */
+  public Map<String,Product> getDetails( Collection<String> pNums )
+         throws StockException
+  {
+    Map<String,Product> res = new LinkedHashMap<>();
+    for ( String pNum : pNums )
+    {
+      Integer slot = theSlots.get( pNum );
+      if ( slot != null )
+        res.put( pNum, read( slot ) );
+    }
+    return res;
+  }
+
+  /**
+   * Returns 'image' of the product
+   * @param pNum The product number
+   * @return ImageIcon representing the image
+   */
+  public ImageIcon getImage( String pNum )
+         throws StockException
+  {
+    Optional<ProductInfo> pr = lookup( pNum );
+    return ImageCache.shared().get( pr.isPresent() ? pr.get().getPicture()
+                                                   : "default.jpg" );
+  }
+
+  /**
+   * Returns the product, its stock level and its picture
+   * @param pNum The product number
+   * @return The product, empty if not in the stock list
+   */
+  public Optional<ProductInfo> lookup( String pNum )
+         throws StockException
+  {
+    Integer slot = theSlots.get( pNum );
+    return slot == null ? Optional.empty() : Optional.of( read( slot ) );
+  }
+
+  /**
+   * Returns the products whose descriptions best match the search
+   * @param words The words searched for
+   * @param max   Maximum number of products returned
+   * @return The products, best match first
+   */
+  public List<Product> search( String words, int max )
+         throws StockException
+  {
+    return new ArrayList<>( getDetails( theIndex.search( words, max ) )
+                              .values() );
+  }
+
+  /**
+   * Returns the products changed since the version given
+   * @param version Version last seen
+   * @return The changes and the version now
+   */
+  public StockChanges changesSince( long version )
+         throws StockException
+  {
+    long        now     = theChanges.latest();   // Before the changes
+    Set<String> changed = theChanges.since( version );
+    if ( changed == null )
+      return new StockChanges( now, new ArrayList<>(), false );
+    return new StockChanges( now,
+                             new ArrayList<>( getDetails( changed )
+                                                .values() ),
+                             true );
+  }
+
+  /**
+   * Returns all the products in product number order,
+   *  each read from the file as it is used
+   * @param fetchSize Not used, the file is already mapped
+   * @return The products
+   */
+  public Stream<Product> scan( int fetchSize )
+  {
+    return theOrder.values().stream().map( slot -> {
+      try
+      {
+        return read( slot );
+      } catch ( StockException e )
+      {
+        throw new IllegalStateException( "Mapped scan: " +
+                                         e.getMessage(), e );
+      }
+    } );
+  }
+
+  /**
+   * Returns the next page of products in product number order
+   * @param after Product number before the page, "" for the first
+   * @param size  Maximum number of products returned
+   * @return The products
+   */
+  public List<Product> scanPage( String after, int size )
+         throws StockException
+  {
+    List<Product> res = new ArrayList<>();
+    for ( int slot : theOrder.tailMap( after, false ).values() )
+    {
+      if ( res.size() == size )
+        break;
+      res.add( read( slot ) );
+    }
+    return res;
+  }
+
+  /**
+   * Customer buys stock, quantity decreased if sucessful.
+   * @param pNum Product number
+   * @param amount Amount of stock bought
+   * @return true if succeeds else false
+   */
+  public boolean buyStock( String pNum, int amount )
+  {
+    Integer slot = theSlots.get( pNum );
+    boolean res = slot != null && take( slot, amount );
+    if ( res )
+      theChanges.record( pNum );
+    DEBUG.trace( "Mapped StockRW: buyStock(%s,%d) -> %s",
+                 pNum, amount, res ? "T" : "F" );
+    return res;
+  }
+
+  /**
+   * Customer buys all the products in the basket, only if there is
+   *  enough stock for every line, so that stock is not taken from
+   *  other buyers while it is held for a basket that can not be bought.
+   * If another buyer takes stock between the check and the take,
+   *  the lines already taken are put back.
+   * @param basket Products bought
+   * @return For each line true if there was enough stock,
+   *  the stock is only taken if all are true
+   */
+  public boolean[] buyStock( Basket basket )
+  {
+    int n = basket.size();
+    boolean[]           bought = new boolean[ n ];
+    Integer[]           slots  = new Integer[ n ];
+    Map<String,Integer> wanted = new HashMap<>();
+    boolean all = true;
+    for ( int i = 0; i < n; i++ )               // Check first
+    {
+      Product pr = basket.get(i);
+      slots[i]   = theSlots.get( pr.getProductNum() );
+      int total  = wanted.merge( pr.getProductNum(), pr.getQuantity(),
+                                 Integer::sum );
+      bought[i]  = slots[i] != null &&
+                   (int) INT.getVolatile( theMap, at( slots[i] ) + R_STOCK )
+                     >= total;
+      all        = all && bought[i];
+    }
+    if ( ! all )
+      return bought;                            // Nothing taken
+
+    int taken = 0;
+    while ( taken < n && take( slots[taken],
+                               basket.get( taken ).getQuantity() ) )
+      taken++;
+    if ( taken < n )
+    {
+      bought[taken] = false;                    // Taken by another
+      for ( int i = 0; i < taken; i++ )         // Put back
+        INT.getAndAdd( theMap, at( slots[i] ) + R_STOCK,
+                       basket.get(i).getQuantity() );
+    }
+    for ( int i = 0; i < taken; i++ )           // Even if put back,
+      theChanges.record( basket.get(i).getProductNum() ); // may be seen
+    return bought;
+  }
+
+  /**
+   * Adds stock (Re-stocks) to the store.
+   * @param pNum Product number
+   * @param amount Amount of stock to add
+   */
+  public void addStock( String pNum, int amount )
+         throws StockException
+  {
+    Integer slot = theSlots.get( pNum );
+    if ( slot == null )
+      throw new StockException( "No such product " + pNum );
+    INT.getAndAdd( theMap, at( slot ) + R_STOCK, amount );
+    theChanges.record( pNum );
+  }
+
+  /**
+   * Modifies Stock details for a given product number,
+   *  adding the product if it is new.
+   * @param detail Product details to change stocklist to
+   */
+  public void modifyStock( Product detail )
+         throws StockException
+  {
+    try
+    {
+      put( detail, "images/Pic" + detail.getProductNum() + ".jpg" );
+    } catch ( IOException e )
+    {
+      throw new StockException( "Stock file: " + e.getMessage() );
+    }
+  }
+
+  /**
+   * Makes all the changes, after checking that each can be made
+   *  and making the file big enough for the new products,
+   *  so either all are made or none are
+   * @param changes Changes to the stock list, made in order
+   * @throws StockException if stock is added to no such product
+   *  or the file can not be made bigger
+   */
+  public synchronized void update( StockUpdate changes )
+         throws StockException
+  {
+    Set<String> added = new HashSet<>();            // Earlier changes
+    for ( StockUpdate.Change c : changes.getChanges() )
+    {
+      String pNum = c.getProductNum();
+      if ( c.isModify() )
+      {
+        if ( ! exists( pNum ) ) added.add( pNum );
+      } else if ( ! added.contains( pNum ) && ! exists( pNum ) )
+      {
+        throw new StockException( "No such product " + pNum );
+      }
+    }
+    try
+    {
+      int needed = theMap.getInt( H_USED ) + added.size();
+      if ( needed > theCapacity )
+        map( Math.max( needed, theCapacity * 2 ) );
+      for ( StockUpdate.Change c : changes.getChanges() )
+      {
+        if ( c.isModify() )
+          put( c.getDetail(),
+               "images/Pic" + c.getProductNum() + ".jpg" );
+        else
+          addStock( c.getProductNum(), c.getAmount() );
+      }
+    } catch ( IOException e )
+    {
+      throw new StockException( "Stock file: " + e.getMessage() );
+    }
+  }
+
+  /**
+   * Add or replace a product, keeping its picture if it has one.
+   *  Readers see either the old or the new details, as the record's
+   *  version is odd while it is being written.
+   * @param detail  The product
+   * @param picture Picture to use if the product is new
+   * @throws IOException if the file can not be made bigger
+   */
+  private synchronized void put( Product detail, String picture )
+          throws IOException
+  {
+    String  pNum = detail.getProductNum();
+    Integer slot = theSlots.get( pNum );
+    theIndex.put( pNum, detail.getDescription() );
+    if ( slot == null )                         // New record
+    {
+      int used = theMap.getInt( H_USED );
+      if ( used == theCapacity )
+        map( theCapacity * 2 );
+      int pos = at( used );
+      writeString( pos + R_NUMBER,  pNum, NUMBER_LEN );
+      writeString( pos + R_PICTURE, picture, PICTURE_LEN );
+      writeString( pos + R_DESC,    detail.getDescription(), DESC_LEN );
+      theMap.putDouble( pos + R_PRICE, detail.getPrice() );
+      INT.setVolatile( theMap, pos + R_STOCK, detail.getQuantity() );
+      INT.setVolatile( theMap, H_USED, used + 1 );   // Now in use
+      theSlots.put( pNum, used );
+      theOrder.put( pNum, used );
+    } else {
+      int pos     = at( slot );
+      int version = (int) INT.getVolatile( theMap, pos + R_VERSION );
+      INT.setVolatile( theMap, pos + R_VERSION, version + 1 );  // Odd
+      writeString( pos + R_DESC, detail.getDescription(), DESC_LEN );
+      theMap.putDouble( pos + R_PRICE, detail.getPrice() );
+      INT.setVolatile( theMap, pos + R_VERSION, version + 2 );  // Even
+      INT.setVolatile( theMap, pos + R_STOCK, detail.getQuantity() );
+    }
+    theChanges.record( pNum );
+  }
+
+  /**
+   * Read a product from its record, reading it again
+   *  if it was changed while being read
+   * @param slot Record number
+   * @return The product
+   * @throws StockException if the record is still being written
+   *  after SPIN_LIMIT ms
+   */
+  private ProductInfo read( int slot ) throws StockException
+  {
+    MappedByteBuffer map = theMap;
+    int  pos   = at( slot );
+    long start = System.nanoTime();
+    for ( int tries = 1; ; tries++ )
+    {
+      int version = (int) INT.getAcquire( map, pos + R_VERSION );
+      if ( ( version & 1 ) == 0 )
+      {
+        String number      = readString( map, pos + R_NUMBER );
+        String description = readString( map, pos + R_DESC );
+        String picture     = readString( map, pos + R_PICTURE );
+        double price       = map.getDouble( pos + R_PRICE );
+        VarHandle.acquireFence();
+        if ( version == (int) INT.getVolatile( map, pos + R_VERSION ) )
+          return new ProductInfo( number, description, price,
+                                  (int) INT.getVolatile( map, pos + R_STOCK ),
+                                  picture );
+      }
+      if ( tries % 1024 == 0 )                  // Still being written
+      {
+        if ( System.nanoTime() - start > SPIN_LIMIT * 1_000_000 )
+          throw new StockException( "Stock file: record " + slot +
+                                    " is being written" );
+        Thread.yield();
+      }
+      Thread.onSpinWait();                      // Being written
+    }
+  }
+
+  /**
+   * Make a record left part written, when the program stopped while
+   *  its details were being changed, readable again. Its version is
+   *  made even and a description or price not fully written is cleared.
+   * @param slot Record number
+   */
+  private void recover( int slot )
+  {
+    int pos     = at( slot );
+    int version = theMap.getInt( pos + R_VERSION );
+    if ( ( version & 1 ) == 0 )
+      return;                                   // Not being written
+    int    len   = theMap.getShort( pos + R_DESC );
+    double price = theMap.getDouble( pos + R_PRICE );
+    if ( len < 0 || len > DESC_LEN )
+      theMap.putShort( pos + R_DESC, (short) 0 );
+    if ( Double.isNaN( price ) || Double.isInfinite( price ) || price < 0 )
+      theMap.putDouble( pos + R_PRICE, 0.0 );
+    INT.setVolatile( theMap, pos + R_VERSION, version + 1 );
+    DEBUG.traceA( "Mapped StockRW: record %d was part written, recovered",
+                  slot );
+  }
+
+  /**
+   * Take stock if there is enough, without locking
+   * @param slot   Record of the product
+   * @param amount Amount wanted
+   * @return true if taken
+   */
+  private boolean take( int slot, int amount )
+  {
+    MappedByteBuffer map = theMap;
+    int pos = at( slot ) + R_STOCK;
+    while ( true )
+    {
+      int level = (int) INT.getVolatile( map, pos );
+      if ( level < amount )
+        return false;
+      if ( INT.compareAndSet( map, pos, level, level - amount ) )
+        return true;
+    }
+  }
+
+  /**
+   * Map the file, big enough for the number of records given.
+   *  Earlier mappings still refer to the same file.
+   * @param capacity Number of records
+   * @throws IOException if the file can not be mapped
+   */
+  private void map( int capacity ) throws IOException
+  {
+    theMap = theFile.map( FileChannel.MapMode.READ_WRITE, 0,
+                          HEADER + (long) capacity * RECORD );
+    theCapacity = capacity;
+  }
+
+  private static int at( int slot )
+  {
+    return HEADER + slot * RECORD;
+  }
+
+  private String readString( int pos )
+  {
+    return readString( theMap, pos );
+  }
+
+  private static String readString( MappedByteBuffer map, int pos )
+  {
+    int    len   = map.getShort( pos );
+    byte[] bytes = new byte[ len ];
+    map.get( pos + 2, bytes );
+    return new String( bytes, StandardCharsets.UTF_8 );
+  }
+
+  /**
+   * Write a string, shortened to fit in the space given
+   * @param pos Position in file
+   * @param s   The string
+   * @param max Bytes available
+   */
+  private void writeString( int pos, String s, int max )
+  {
+    byte[] bytes = s.getBytes( StandardCharsets.UTF_8 );
+    while ( bytes.length > max )
+    {
+      s     = s.substring( 0, s.length() - 1 );
+      bytes = s.getBytes( StandardCharsets.UTF_8 );
+    }
+    theMap.put( pos + 2, bytes );
+    theMap.putShort( pos, (short) bytes.length );
+  }
+}
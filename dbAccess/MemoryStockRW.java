@@ -0,0 +1,391 @@
+package dbAccess;
+
+import catalogue.Basket;
+import catalogue.ImageCache;
+import catalogue.Product;
+import catalogue.ProductInfo;
+import debug.DEBUG;
+import middle.StockChanges;
+import middle.StockException;
+import middle.StockReadWriter;
+import middle.StockUpdate;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+  * Implements read/write access to a stock list held only in memory.
+  * Nothing is saved, the shop starts with the demonstration products.
+  * Stock levels are changed with compare and set, so no locks
+  *  are held and sales of different products never wait for each other.
+  * Selected by the word Memory in the file DataBase.txt
+  * @version 1.0
+  */
+
+public class MemoryStockRW implements StockReadWriter
+{
+  /**
+   * Description, price and picture of a product, never changed
+   */
+  private static final class Details
+  {
+    private final String description;
+    private final double price;
+    private final String picture;
+
+    private Details( String aDescription, double aPrice, String aPicture )
+    {
+      description = aDescription;
+      price       = aPrice;
+      picture     = aPicture;
+    }
+  }
+
+  /**
+   * A product in the stock list
+   */
+  private static final class Item
+  {
+    private final    String  number;          // Interned
+    private volatile Details details;
+    private volatile int     stockLevel;
+
+    private Item( String aNumber, Details aDetails, int aStockLevel )
+    {
+      number     = aNumber;
+      details    = aDetails;
+      stockLevel = aStockLevel;
+    }
+  }
+
+  private static final AtomicIntegerFieldUpdater<Item> STOCK_LEVEL =
+    AtomicIntegerFieldUpdater.newUpdater( Item.class, "stockLevel" );
+
+  private static MemoryStockRW theShared = null;
+
+  private final ConcurrentHashMap<String,Item> theItems =
+    new ConcurrentHashMap<>();
+  private final ConcurrentSkipListSet<String> theNumbers =  // In order
+    new ConcurrentSkipListSet<>();
+  private final DescriptionIndex theIndex = new DescriptionIndex();
+  // Recent changes, versions start from the time the stock list is
+  //  opened, so that one from an earlier run is not taken as current
+  private final StockChangeLog theChanges =
+    new StockChangeLog( 65536, System.currentTimeMillis() << 20 );
+
+  /**
+   * The stock list shared by all readers and writers
+   * @return The in memory stock list
+   */
+  public static synchronized MemoryStockRW shared()
+  {
+    if ( theShared == null )
+      theShared = new MemoryStockRW();
+    return theShared;
+  }
+
+  /**
+   * An empty stock list that is then filled
+   *  with the demonstration products
+   */
+  public MemoryStockRW()
+  {
+    for ( ProductInfo pr : DemoCatalogue.products() )
+      put( pr, pr.getPicture() );
+  }
+
+  /**
+   * Checks if the product exits in the stock list
+   * @param pNum The product number
+   * @return true if exists otherwise false
+   */
+  public boolean exists( String pNum )
+  {
+    return theItems.containsKey( pNum );
+  }
+
+  /**
+   * Returns details about the product in the stock list.
+   * @param pNum The product number
+   * @return Details in an instance of a Product
+   */
+  public Product getDetails( String pNum )
+  {
+    Optional<ProductInfo> pr = lookup( pNum );
+    return pr.isPresent() ? pr.get() : new Product( "0", "", 0.00, 0 );
+  }
+
+  /**
+   * Returns details about many products
+   * @param pNums The product numbers
+   * @return Map of product number to details, in the order asked for
+   */
+  public Map<String,Product> getDetails( Collection<String> pNums )
+  {
+    Map<String,Product> res = new LinkedHashMap<>();
+    for ( String pNum : pNums )
+    {
+      Item item = theItems.get( pNum );
+      if ( item != null )
+        res.put( pNum, productOf( item ) );
+    }
+    return res;
+  }
+
+  /**
+   * Returns 'image' of the product
+   * @param pNum The product number
+   * @return ImageIcon representing the image
+   */
+  public ImageIcon getImage( String pNum )
+  {
+    Item item = theItems.get( pNum );
+    return ImageCache.shared().get( item == null ? "default.jpg"
+                                                 : item.details.picture );
+  }
+
+  /**
+   * Returns the product, its stock level and its picture
+   * @param pNum The product number
+   * @return The product, empty if not in the stock list
+   */
+  public Optional<ProductInfo> lookup( String pNum )
+  {
+    Item item = theItems.get( pNum );
+    return item == null ? Optional.empty()
+                        : Optional.of( productOf( item ) );
+  }
+
+  /**
+   * Returns the products whose descriptions best match the search
+   * @param words The words searched for
+   * @param max   Maximum number of products returned
+   * @return The products, best match first
+   */
+  public List<Product> search( String words, int max )
+  {
+    return new ArrayList<>( getDetails( theIndex.search( words, max ) )
+                              .values() );
+  }
+
+  /**
+   * Returns the products changed since the version given
+   * @param version Version last seen
+   * @return The changes and the version now
+   */
+  public StockChanges changesSince( long version )
+  {
+    long        now     = theChanges.latest();   // Before the changes
+    Set<String> changed = theChanges.since( version );
+    if ( changed == null )
+      return new StockChanges( now, new ArrayList<>(), false );
+    return new StockChanges( now,
+                             new ArrayList<>( getDetails( changed )
+                                                .values() ),
+                             true );
+  }
+
+  /**
+   * Returns all the products in product number order
+   * @param fetchSize Not used, the products are already in memory
+   * @return The products
+   */
+  public Stream<Product> scan( int fetchSize )
+  {
+    return theNumbers.stream()
+                     .map( theItems::get )
+                     .map( MemoryStockRW::productOf );
+  }
+
+  /**
+   * Returns the next page of products in product number order
+   * @param after Product number before the page, "" for the first
+   * @param size  Maximum number of products returned
+   * @return The products
+   */
+  public List<Product> scanPage( String after, int size )
+  {
+    return theNumbers.tailSet( after, false ).stream()
+                     .limit( size )
+                     .map( theItems::get )
+                     .map( MemoryStockRW::productOf )
+                     .collect( Collectors.toCollection( ArrayList::new ) );
+  }
+
+  /**
+   * Customer buys stock, quantity decreased if sucessful.
+   * @param pNum Product number
+   * @param amount Amount of stock bought
+   * @return true if succeeds else false
+   */
+  public boolean buyStock( String pNum, int amount )
+  {
+    Item item = theItems.get( pNum );
+    boolean res = item != null && take( item, amount );
+    if ( res )
+      theChanges.record( pNum );
+    DEBUG.trace( "Memory StockRW: buyStock(%s,%d) -> %s",
+                 pNum, amount, res ? "T" : "F" );
+    return res;
+  }
+
+  /**
+   * Customer buys all the products in the basket, only if there is
+   *  enough stock for every line, so that stock is not taken from
+   *  other buyers while it is held for a basket that can not be bought.
+   * If another buyer takes stock between the check and the take,
+   *  the lines already taken are put back.
+   * @param basket Products bought
+   * @return For each line true if there was enough stock,
+   *  the stock is only taken if all are true
+   */
+  public boolean[] buyStock( Basket basket )
+  {
+    int n = basket.size();
+    boolean[]           bought = new boolean[ n ];
+    Item[]              items  = new Item[ n ];
+    Map<String,Integer> wanted = new HashMap<>();
+    boolean all = true;
+    for ( int i = 0; i < n; i++ )               // Check first
+    {
+      Product pr = basket.get(i);
+      items[i]   = theItems.get( pr.getProductNum() );
+      int total  = wanted.merge( pr.getProductNum(), pr.getQuantity(),
+                                 Integer::sum );
+      bought[i]  = items[i] != null &&
+                   STOCK_LEVEL.get( items[i] ) >= total;
+      all        = all && bought[i];
+    }
+    if ( ! all )
+      return bought;                            // Nothing taken
+
+    int taken = 0;
+    while ( taken < n && take( items[taken],
+                               basket.get( taken ).getQuantity() ) )
+      taken++;
+    if ( taken < n )
+    {
+      bought[taken] = false;                    // Taken by another
+      for ( int i = 0; i < taken; i++ )         // Put back
+        STOCK_LEVEL.getAndAdd( items[i], basket.get(i).getQuantity() );
+    }
+    for ( int i = 0; i < taken; i++ )           // Even if put back,
+      theChanges.record( basket.get(i).getProductNum() ); // may be seen
+    return bought;
+  }
+
+  /**
+   * Adds stock (Re-stocks) to the store.
+   * @param pNum Product number
+   * @param amount Amount of stock to add
+   */
+  public void addStock( String pNum, int amount )
+         throws StockException
+  {
+    Item item = theItems.get( pNum );
+    if ( item == null )
+      throw new StockException( "No such product " + pNum );
+    STOCK_LEVEL.getAndAdd( item, amount );
+    theChanges.record( pNum );
+  }
+
+  /**
+   * Modifies Stock details for a given product number,
+   *  adding the product if it is new.
+   * @param detail Product details to change stocklist to
+   */
+  public void modifyStock( Product detail )
+  {
+    put( detail, "images/Pic" + detail.getProductNum() + ".jpg" );
+  }
+
+  /**
+   * Makes all the changes, after checking that each can be made,
+   *  so either all are made or none are
+   * @param changes Changes to the stock list, made in order
+   * @throws StockException if stock is added to no such product
+   */
+  public void update( StockUpdate changes )
+         throws StockException
+  {
+    Set<String> added = new HashSet<>();            // Earlier changes
+    for ( StockUpdate.Change c : changes.getChanges() )
+    {
+      String pNum = c.getProductNum();
+      if ( c.isModify() )
+        added.add( pNum );
+      else if ( ! added.contains( pNum ) && ! exists( pNum ) )
+        throw new StockException( "No such product " + pNum );
+    }
+    for ( StockUpdate.Change c : changes.getChanges() )
+    {
+      if ( c.isModify() )
+        modifyStock( c.getDetail() );
+      else
+        addStock( c.getProductNum(), c.getAmount() );
+    }
+  }
+
+  /**
+   * Add or replace a product, keeping its picture if it has one
+   * @param detail  The product
+   * @param picture Picture to use if the product is new
+   */
+  private void put( Product detail, String picture )
+  {
+    String pNum = detail.getProductNum().intern();
+    theItems.compute( pNum, ( key, item ) -> {
+      Details details = new Details( detail.getDescription(),
+                                     detail.getPrice(),
+                                     item == null ? picture
+                                                  : item.details.picture );
+      if ( item == null )
+        return new Item( pNum, details, detail.getQuantity() );
+      item.details    = details;
+      item.stockLevel = detail.getQuantity();
+      return item;
+    } );
+    theNumbers.add( pNum );
+    theIndex.put( pNum, detail.getDescription() );
+    theChanges.record( pNum );
+  }
+
+  /**
+   * Take stock if there is enough, without locking
+   * @param item   The product
+   * @param amount Amount wanted
+   * @return true if taken
+   */
+  private static boolean take( Item item, int amount )
+  {
+    while ( true )
+    {
+      int level = item.stockLevel;
+      if ( level < amount )
+        return false;
+      if ( STOCK_LEVEL.compareAndSet( item, level, level - amount ) )
+        return true;
+    }
+  }
+
+  private static ProductInfo productOf( Item item )
+  {
+    Details details = item.details;
+    return new ProductInfo( item.number, details.description,
+                            details.price, item.stockLevel,
+                            details.picture );
+  }
+}
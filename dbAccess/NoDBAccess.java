@@ -0,0 +1,45 @@
+package dbAccess;
+
+import java.io.File;
+
+/**
+  * The stock list is not held in a database, but in memory
+  *  or in a file of its own, so there is no driver to load.
+  * @version 1.0
+  */
+
+class NoDBAccess extends DBAccess
+{
+  private final String theFile;           // Holds stock list, null none
+
+  /**
+   * @param file File the stock list is kept in, null if only in memory
+   */
+  NoDBAccess( String file )
+  {
+    theFile = file;
+  }
+
+  public void loadDriver() throws Exception
+  {
+    // No driver needed
+  }
+
+  public boolean usesDatabase()
+  {
+    return false;
+  }
+
+  /**
+   * Remove the file the stock list is kept in, so that it is
+   *  created again with the demo products when next used
+   * @return true if there is no file left
+   */
+  public boolean discard()
+  {
+    if ( theFile == null )
+      return true;
+    File file = new File( theFile );
+    return ! file.exists() || file.delete();
+  }
+}
@@ -0,0 +1,156 @@
+package dbAccess;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+  * A connection to the database borrowed from a ConnectionPool.
+  * Closing it returns the connection to the pool,
+  *  so use it in a try-with-resources block.
+  * Prepared statements are kept with the connection so that
+  *  the database only compiles each query once per connection.
+  * @version 1.0
+  */
+
+public class PooledConnection implements AutoCloseable
+{
+  private final ConnectionPool thePool;       // Owner
+  private final Connection     theCon;        // Real connection
+  private long                 theLastUsed;   // When returned (ms)
+  private final AtomicBoolean  theLent = new AtomicBoolean();
+
+  private static final int MAX_STATEMENTS = 32;
+
+  // Prepared statements keyed by SQL, least recently used first
+  private final Map<String,PreparedStatement> theStatements =
+    new LinkedHashMap<String,PreparedStatement>( 16, 0.75f, true )
+    {
+      private static final long serialVersionUID = 1;
+      @Override
+      protected boolean removeEldestEntry(
+                          Map.Entry<String,PreparedStatement> eldest )
+      {
+        if ( size() <= MAX_STATEMENTS ) return false;
+        closeQuietly( eldest.getValue() );
+        return true;
+      }
+    };
+
+  PooledConnection( ConnectionPool pool, Connection con )
+  {
+    thePool     = pool;
+    theCon      = con;
+    theLastUsed = System.currentTimeMillis();
+  }
+
+  /**
+   * Return the underlying JDBC connection
+   * @return the connection
+   */
+  public Connection getConnection()
+  {
+    return theCon;
+  }
+
+  /**
+   * Create a statement on this connection
+   * @return A statement object, to be closed by the caller
+   * @throws SQLException if problem
+   */
+  public Statement createStatement() throws SQLException
+  {
+    return theCon.createStatement();
+  }
+
+  /**
+   * Return a prepared statement for the SQL, compiling it only
+   *  if it has not been used on this connection before.
+   * The statement belongs to the connection, do not close it.
+   * @param sql SQL with ? for each parameter
+   * @return The prepared statement, parameters cleared
+   * @throws SQLException if problem
+   */
+  public PreparedStatement prepare( String sql ) throws SQLException
+  {
+    PreparedStatement ps = theStatements.get( sql );
+    if ( ps == null || ps.isClosed() )
+    {
+      thePool.countStatement( false );
+      ps = theCon.prepareStatement( sql );
+      theStatements.put( sql, ps );
+    } else {
+      thePool.countStatement( true );
+      ps.clearParameters();
+    }
+    return ps;
+  }
+
+  /**
+   * Return the connection to the pool it was borrowed from,
+   *  closing it again does nothing
+   */
+  @Override
+  public void close()
+  {
+    if ( theLent.compareAndSet( true, false ) )   // Only once
+      thePool.release( this );
+  }
+
+  /**
+   * Mark the connection as borrowed
+   */
+  void lend()
+  {
+    theLent.set( true );
+  }
+
+  /**
+   * Time in ms since the connection was last returned to the pool
+   * @param now current time in ms
+   * @return idle time in ms
+   */
+  long idleFor( long now )
+  {
+    return now - theLastUsed;
+  }
+
+  /**
+   * Mark the connection as just used
+   */
+  void touch()
+  {
+    theLastUsed = System.currentTimeMillis();
+  }
+
+  /**
+   * Close the real connection, it will no longer be used
+   */
+  void discard()
+  {
+    theStatements.values().forEach( PooledConnection::closeQuietly );
+    theStatements.clear();
+    try
+    {
+      theCon.close();
+    } catch ( SQLException e )
+    {
+      // Nothing more can be done with it
+    }
+  }
+
+  private static void closeQuietly( Statement stmt )
+  {
+    try
+    {
+      stmt.close();
+    } catch ( SQLException e )
+    {
+      // Nothing more can be done with it
+    }
+  }
+}
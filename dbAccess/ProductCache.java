@@ -0,0 +1,151 @@
+package dbAccess;
+
+import catalogue.ProductInfo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+  * A bounded in memory cache of products read from the database.
+  * The least recently used product is removed when the cache is full
+  *  and a product is re-read from the database once it is too old.
+  * A writer invalidates a product after it has changed it,
+  *  a value read before an invalidation is never put in the cache.
+  * Copies are stored and returned, as callers change the products.
+  * @version 1.0
+  */
+
+public class ProductCache
+{
+  private static class Entry
+  {
+    private final ProductInfo product;
+    private final long        loaded;        // When read (ms)
+
+    private Entry( ProductInfo aProduct, long when )
+    {
+      product = aProduct;
+      loaded  = when;
+    }
+  }
+
+  private final int  theMaxSize;             // Products held
+  private final long theTimeToLive;          // ms
+  private final LinkedHashMap<String,Entry> theEntries;
+
+  private long theInvalidations = 0;         // Writes seen
+  private long theHits          = 0;
+  private long theMisses        = 0;
+  private long theEvictions     = 0;
+
+  /**
+   * Create a cache
+   * @param maxSize Maximum number of products held
+   * @param timeToLive Time in ms a product is held for
+   */
+  public ProductCache( int maxSize, long timeToLive )
+  {
+    theMaxSize    = maxSize;
+    theTimeToLive = timeToLive;
+    theEntries    = new LinkedHashMap<String,Entry>( 16, 0.75f, true )
+    {
+      private static final long serialVersionUID = 1;
+      @Override
+      protected boolean removeEldestEntry( Map.Entry<String,Entry> eldest )
+      {
+        if ( size() <= theMaxSize ) return false;
+        theEvictions++;
+        return true;
+      }
+    };
+  }
+
+  /**
+   * Return a copy of the cached product
+   * @param pNum The product number
+   * @return The product or null if not cached
+   */
+  public synchronized ProductInfo get( String pNum )
+  {
+    Entry entry = theEntries.get( pNum );
+    if ( entry != null &&
+         System.currentTimeMillis() - entry.loaded > theTimeToLive )
+    {
+      theEntries.remove( pNum );              // Too old
+      theEvictions++;
+      entry = null;
+    }
+    if ( entry == null )
+    {
+      theMisses++;
+      return null;
+    }
+    theHits++;
+    return copy( entry.product );
+  }
+
+  /**
+   * Return a stamp to be given to put, taken before
+   *  the product is read from the database
+   * @return The stamp
+   */
+  public synchronized long stamp()
+  {
+    return theInvalidations;
+  }
+
+  /**
+   * Add a product read from the database to the cache, unless
+   *  a product has been changed since the stamp was taken.
+   * @param product The product as read
+   * @param stamp   Value of stamp() before the product was read
+   */
+  public synchronized void put( ProductInfo product, long stamp )
+  {
+    if ( stamp == theInvalidations )
+      theEntries.put( product.getProductNum(),
+                      new Entry( copy( product ),
+                                 System.currentTimeMillis() ) );
+  }
+
+  /**
+   * Remove a product that has been changed in the database
+   * @param pNum The product number
+   */
+  public synchronized void invalidate( String pNum )
+  {
+    theInvalidations++;
+    theEntries.remove( pNum );
+  }
+
+  /**
+   * Remove all products from the cache
+   */
+  public synchronized void clear()
+  {
+    theInvalidations++;
+    theEntries.clear();
+  }
+
+  public synchronized long hits()      { return theHits; }
+  public synchronized long misses()    { return theMisses; }
+  public synchronized long evictions() { return theEvictions; }
+  public synchronized int  size()      { return theEntries.size(); }
+
+  /**
+   * Fraction of requests answered from the cache
+   * @return hit rate 0.0 .. 1.0
+   */
+  public synchronized double hitRate()
+  {
+    long total = theHits + theMisses;
+    return total == 0 ? 0.0 : (double) theHits / total;
+  }
+
+  private static ProductInfo copy( ProductInfo pr )
+  {
+    return new ProductInfo( pr.getProductNum(), pr.getDescription(),
+                            pr.getPrice(), pr.getQuantity(),
+                            pr.getPicture() );
+  }
+}
@@ -0,0 +1,194 @@
+package dbAccess;
+
+import debug.DEBUG;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+  * Brings the tables in the database up to the current version.
+  * The version of the tables is held in the table SchemaVersion,
+  *  a database created before this existed is taken to be version 1.
+  * Each upgrade is done in a single transaction,
+  *  so a failed upgrade leaves the database as it was.
+  * @version 1.0
+  */
+
+public class SchemaMigration
+{
+  // Entry n-1 holds the SQL to upgrade the tables from
+  //  version n-1 to version n. Only ever add to the end.
+  private static final String[][] theMigrations = {
+
+    { // 1 The original tables
+      "create table ProductTable ("+
+          "productNo      Char(4)," +
+          "description    Varchar(40)," +
+          "picture        Varchar(80)," +
+          "price          Float)",
+      "create table StockTable ("+
+          "productNo      Char(4)," +
+          "stockLevel     Integer)",
+    },
+
+    { // 2 Keyed (and hence indexed) on product number
+      "alter table ProductTable alter column productNo not null",
+      "alter table ProductTable add constraint ProductTable_PK " +
+          "primary key (productNo)",
+      "alter table StockTable alter column productNo not null",
+      "alter table StockTable add constraint StockTable_PK " +
+          "primary key (productNo)",
+      "alter table StockTable add constraint StockTable_FK " +
+          "foreign key (productNo) references ProductTable (productNo)",
+    },
+
+    { // 3 Last change in the stock journal held in StockTable
+      "create table StockJournalMark ( lastSeq BigInt )",
+      "insert into StockJournalMark values ( 0 )",
+    },
+
+    { // 4 Product numbers of up to 16 characters, a Char column can
+      //  not be widened so the tables are copied
+      "create table ProductTable4 ("+
+          "productNo      Varchar(16) not null," +
+          "description    Varchar(40)," +
+          "picture        Varchar(80)," +
+          "price          Float)",
+      "insert into ProductTable4 " +
+          "select rtrim(productNo), description, picture, price " +
+          "  from ProductTable",
+      "create table StockTable4 ("+
+          "productNo      Varchar(16) not null," +
+          "stockLevel     Integer)",
+      "insert into StockTable4 " +
+          "select rtrim(productNo), stockLevel from StockTable",
+      "drop table StockTable",
+      "drop table ProductTable",
+      "rename table ProductTable4 to ProductTable",
+      "rename table StockTable4 to StockTable",
+      "alter table ProductTable add constraint ProductTable_PK " +
+          "primary key (productNo)",
+      "alter table StockTable add constraint StockTable_PK " +
+          "primary key (productNo)",
+      "alter table StockTable add constraint StockTable_FK " +
+          "foreign key (productNo) references ProductTable (productNo)",
+    },
+
+    { // 5 Products changed, by version (the stock journal sequence
+      //  number of the last change), so clients can be brought up to date
+      "create table StockChangeLog ("+
+          "version        BigInt not null primary key," +
+          "productNo      Varchar(16) not null)",
+      "alter table StockJournalMark add column logFrom BigInt",
+      "update StockJournalMark set logFrom = lastSeq",  // Earlier unknown
+    },
+
+  };
+
+  private static boolean theDone = false;     // Checked this run
+
+  /**
+   * The version the tables are upgraded to
+   * @return latest version number
+   */
+  public static int latestVersion()
+  {
+    return theMigrations.length;
+  }
+
+  /**
+   * Upgrade the tables to the latest version, once per program run.
+   * @param con Connection to the database
+   * @throws SQLException if an upgrade fails
+   */
+  public static synchronized void migrateOnce( Connection con )
+         throws SQLException
+  {
+    if ( ! theDone )
+    {
+      migrate( con );
+      theDone = true;
+    }
+  }
+
+  /**
+   * Upgrade the tables to the latest version
+   * @param con Connection to the database
+   * @throws SQLException if an upgrade fails
+   */
+  public static synchronized void migrate( Connection con )
+         throws SQLException
+  {
+    boolean autoCommit = con.getAutoCommit();
+    con.setAutoCommit( false );
+    try ( Statement stmt = con.createStatement() )
+    {
+      int version = currentVersion( con );
+      if ( ! tableExists( con, "SchemaVersion" ) )
+      {
+        stmt.execute( "create table SchemaVersion ( version Integer )" );
+        stmt.execute( "insert into SchemaVersion values ( " + version + " )" );
+        con.commit();
+      }
+
+      while ( version < latestVersion() )
+      {
+        DEBUG.traceA( "Upgrading database tables to version %d",
+                      version+1 );
+        try
+        {
+          for ( String sql : theMigrations[ version ] )
+          {
+            stmt.execute( sql );
+          }
+          version++;
+          stmt.executeUpdate( "update SchemaVersion set version = " +
+                              version );
+          con.commit();
+        } catch ( SQLException e )
+        {
+          con.rollback();
+          throw new SQLException( "Upgrade to version " + (version+1) +
+                                  " failed: " + e.getMessage(), e );
+        }
+      }
+    } finally {
+      con.setAutoCommit( autoCommit );
+    }
+  }
+
+  /**
+   * Return the version of the tables in the database
+   * @param con Connection to the database
+   * @return version, 0 if there are no tables
+   * @throws SQLException if problem
+   */
+  public static int currentVersion( Connection con )
+         throws SQLException
+  {
+    if ( tableExists( con, "SchemaVersion" ) )
+    {
+      try ( Statement stmt = con.createStatement();
+            ResultSet rs   = stmt.executeQuery(
+                               "select version from SchemaVersion" ) )
+      {
+        return rs.next() ? rs.getInt( "version" ) : 0;
+      }
+    }
+    return tableExists( con, "ProductTable" ) ? 1 : 0;  // Before versions
+  }
+
+  private static boolean tableExists( Connection con, String name )
+          throws SQLException
+  {
+    DatabaseMetaData md = con.getMetaData();
+    try ( ResultSet rs = md.getTables( null, null,
+                                       name.toUpperCase(), null ) )
+    {
+      return rs.next();
+    }
+  }
+}
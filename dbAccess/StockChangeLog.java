@@ -0,0 +1,116 @@
+package dbAccess;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+  * The most recent changes to the stock list held in memory,
+  *  each the version (a number that only goes up) and the product
+  *  changed, so a client can ask which products have changed since
+  *  the version it last saw instead of reading them all again.
+  * Once full the oldest change is forgotten for each new one.
+  * @version 1.0
+  */
+
+public class StockChangeLog
+{
+  private final long[]   theVersions;
+  private final String[] theProducts;
+  private int  theNext   = 0;                   // Slot written next
+  private int  theCount  = 0;                   // Slots used
+  private long theLatest = 0;                   // Version of last change
+  private long theFrom   = 0;                   // All changes after held
+
+  /**
+   * An empty log
+   * @param capacity Number of changes remembered
+   * @param version  Version the stock list is at
+   */
+  public StockChangeLog( int capacity, long version )
+  {
+    theVersions = new long[ capacity ];
+    theProducts = new String[ capacity ];
+    theLatest   = version;
+    theFrom     = version;
+  }
+
+  /**
+   * Record a change, numbered on from the last one
+   * @param pNum The product changed
+   * @return The version of the change
+   */
+  public synchronized long record( String pNum )
+  {
+    return record( theLatest + 1, pNum );
+  }
+
+  /**
+   * Record a change numbered elsewhere, versions must only go up
+   * @param version The version of the change
+   * @param pNum    The product changed
+   * @return The version of the change
+   */
+  public synchronized long record( long version, String pNum )
+  {
+    if ( theCount == theVersions.length )
+      theFrom = theVersions[ theNext ];         // Forgotten
+    theVersions[ theNext ] = version;
+    theProducts[ theNext ] = pNum;
+    theNext   = ( theNext + 1 ) % theVersions.length;
+    theCount  = Math.min( theCount + 1, theVersions.length );
+    theLatest = Math.max( theLatest, version );
+    return version;
+  }
+
+  /**
+   * Version of the last change
+   * @return version
+   */
+  public synchronized long latest()
+  {
+    return theLatest;
+  }
+
+  /**
+   * The earliest version that changes since can be found for
+   * @return version
+   */
+  public synchronized long from()
+  {
+    return theFrom;
+  }
+
+  /**
+   * The products changed after the version given
+   * @param version Last version seen
+   * @return The products, null if changes that old are forgotten
+   *  or the version is one not yet reached
+   */
+  public synchronized Set<String> since( long version )
+  {
+    if ( version < theFrom || version > theLatest )
+      return null;                              // Not held
+    int lo = 0, hi = theCount;                  // Versions go up, so
+    while ( lo < hi )                           //  find the first
+    {                                           //  later one
+      int mid = ( lo + hi ) >>> 1;
+      if ( theVersions[ slot( mid ) ] > version ) hi = mid;
+      else                                        lo = mid + 1;
+    }
+    Set<String> res = new LinkedHashSet<>();
+    for ( int i = lo; i < theCount; i++ )
+      res.add( theProducts[ slot( i ) ] );
+    return res;
+  }
+
+  /**
+   * Slot holding the i'th oldest change
+   * @param i 0 for the oldest
+   * @return slot
+   */
+  private int slot( int i )
+  {
+    return ( theNext - theCount + i + theVersions.length ) %
+           theVersions.length;
+  }
+}
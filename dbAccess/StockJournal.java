@@ -0,0 +1,333 @@
+package dbAccess;
+
+import debug.DEBUG;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+  * A file of changes to stock levels not yet written to the database,
+  *  so that they are not lost if the program stops before they are.
+  * Each change is a line "sequence amount productNo", the product
+  *  number last as it may hold spaces, and is written straight to
+  *  the file, then forced to the disk before the change is taken as
+  *  made. Changes written while the disk is being forced are forced
+  *  together by the next to wait, so the disk is not forced once for
+  *  each change when many are made at once.
+  * The file is held as numbered segments, each starting with the
+  *  line HEADER, a new segment is started each time the changes are
+  *  taken to be written to the database, and older segments are
+  *  deleted once the database holds them. A segment without HEADER
+  *  is read as lines "sequence productNo amount".
+  * The database records the sequence number of the last change it
+  *  holds, so a change is never applied twice. A change the database
+  *  will not take is put aside in the file name.rejected.
+  * @version 1.0
+  */
+
+public class StockJournal
+{
+  public static final String NAME   = "catshop.journal";
+  static final String        HEADER = "#journal 2";   // Line order
+
+  /**
+   * A change read back from the journal
+   */
+  static final class Change
+  {
+    final long   seq;
+    final String pNum;
+    final int    amount;
+
+    private Change( long aSeq, String aPNum, int anAmount )
+    {
+      seq    = aSeq;
+      pNum   = aPNum;
+      amount = anAmount;
+    }
+  }
+
+  private final String theName;                 // Segment files name.n
+  private FileChannel  theFile    = null;       // Segment written to
+  private int          theSegment = 0;          // Its number
+  private long         theSeq     = 0;          // Last change written
+  private final Object     theSyncLock = new Object(); // One forcing
+  private final AtomicLong theSynced   = new AtomicLong(); // On disk
+
+  /**
+   * A journal held in the current directory
+   * @param name Name of the journal files
+   */
+  public StockJournal( String name )
+  {
+    theName = name;
+  }
+
+  /**
+   * Read the changes in the journal later than the mark,
+   *  changes are numbered on from the last one found.
+   *  A change only partly written, with no end of line, is ignored,
+   *  as is a line that can not be read, but both are logged.
+   * @param mark Sequence number of the last change in the database
+   * @return The changes in the order made
+   * @throws IOException if the journal can not be read
+   */
+  synchronized List<Change> unapplied( long mark ) throws IOException
+  {
+    List<Change> res = new ArrayList<>();
+    theSeq = mark;
+    for ( Path file : segments().values() )
+    {
+      String[] lines = new String( Files.readAllBytes( file ),
+                                   StandardCharsets.UTF_8 )
+                         .split( "\n", -1 );   // Last is after the
+      boolean current = lines[0].equals( HEADER ); //  last end of line
+      for ( int i = current ? 1 : 0; i < lines.length; i++ )
+      {
+        String line = lines[i];
+        if ( i == lines.length - 1 )
+        {
+          if ( ! line.isEmpty() )
+            DEBUG.traceA( "StockJournal: %s partly written [%s] ignored",
+                          file, line );
+          break;
+        }
+        Change c = parse( line, current );
+        if ( c == null )
+        {
+          DEBUG.traceA( "StockJournal: %s can not read [%s], ignored",
+                        file, line );
+          continue;
+        }
+        if ( c.seq > mark )
+          res.add( c );
+        theSeq = Math.max( theSeq, c.seq );
+      }
+    }
+    return res;
+  }
+
+  /**
+   * Read a change from a line of the journal
+   * @param line    The line, without its end of line
+   * @param current true if "sequence amount productNo",
+   *                false if "sequence productNo amount"
+   * @return The change, null if the line can not be read
+   */
+  private static Change parse( String line, boolean current )
+  {
+    String[] f = current ? line.split( " ", 3 ) : line.trim().split( " " );
+    if ( f.length != 3 )
+      return null;
+    String pNum = current ? f[2] : f[1];
+    if ( pNum.isEmpty() )
+      return null;
+    try
+    {
+      return new Change( Long.parseLong( f[0] ), pNum,
+                         Integer.parseInt( current ? f[1] : f[2] ) );
+    } catch ( NumberFormatException e )
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Start writing to a new segment
+   * @throws IOException if the segment can not be created
+   */
+  synchronized void start() throws IOException
+  {
+    if ( theFile != null )
+    {
+      theFile.force( false );                   // All on disk
+      theSynced.accumulateAndGet( theSeq, Math::max );
+      theFile.close();
+    }
+    if ( theSegment == 0 )
+    {
+      TreeMap<Integer,Path> old = segments();
+      theSegment = old.isEmpty() ? 0 : old.lastKey();
+    }
+    theSegment++;
+    theFile = FileChannel.open( segment( theSegment ),
+                                StandardOpenOption.CREATE,
+                                StandardOpenOption.WRITE,
+                                StandardOpenOption.TRUNCATE_EXISTING );
+    write( HEADER );
+  }
+
+  /**
+   * Write a change to the journal
+   * @param pNum   The product number
+   * @param amount Change in stock level
+   * @return Sequence number of the change
+   * @throws IOException if the change can not be written
+   */
+  synchronized long append( String pNum, int amount ) throws IOException
+  {
+    long seq = ++theSeq;
+    if ( theFile != null )
+      write( seq + " " + amount + " " + pNum.trim() );
+    return seq;
+  }
+
+  /**
+   * Write a line to the segment being written to
+   * @param text The line, without its end of line
+   * @throws IOException if the line can not be written
+   */
+  private void write( String text ) throws IOException
+  {
+    ByteBuffer line = ByteBuffer.wrap(
+      ( text + "\n" ).getBytes( StandardCharsets.UTF_8 ) );
+    while ( line.hasRemaining() )
+      theFile.write( line );
+  }
+
+  /**
+   * Wait until the change is on the disk, forcing the file if no
+   *  other caller has done so since it was written
+   * @param seq Sequence number of the change
+   * @throws IOException if the file can not be forced
+   */
+  void sync( long seq ) throws IOException
+  {
+    synchronized ( theSyncLock )
+    {
+      if ( theSynced.get() >= seq )
+        return;                                 // Forced by another
+      FileChannel file;
+      long        upTo;
+      synchronized ( this )                     // Appends carry on
+      {                                         //  while forcing
+        file = theFile;
+        upTo = theSeq;
+      }
+      try
+      {
+        if ( file != null )
+          file.force( false );
+      } catch ( ClosedChannelException e )
+      {
+        if ( theSynced.get() < seq )            // Not forced by start
+          throw e;
+      }
+      theSynced.accumulateAndGet( upTo, Math::max );
+    }
+  }
+
+  /**
+   * Put aside a change the database would not take, in the file
+   *  name.rejected, so that it is not tried again but not lost
+   * @param pNum   The product number
+   * @param amount Change in stock level
+   * @throws IOException if the change can not be written
+   */
+  synchronized void reject( String pNum, int amount ) throws IOException
+  {
+    Files.write( Paths.get( theName + ".rejected" ),
+                 ( System.currentTimeMillis() + " " + pNum.trim() + " " +
+                   amount + "\n" ).getBytes( StandardCharsets.UTF_8 ),
+                 StandardOpenOption.CREATE, StandardOpenOption.APPEND );
+  }
+
+  /**
+   * Sequence number of the last change written
+   * @return sequence number
+   */
+  synchronized long lastSeq()
+  {
+    return theSeq;
+  }
+
+  /**
+   * Number of the segment being written to
+   * @return segment number
+   */
+  synchronized int segment()
+  {
+    return theSegment;
+  }
+
+  /**
+   * Delete the segments before the one given, their changes
+   *  are held in the database
+   * @param segment Number of the first segment to keep
+   */
+  synchronized void deleteBefore( int segment )
+  {
+    for ( Map.Entry<Integer,Path> e : segments().entrySet() )
+    {
+      if ( e.getKey() < segment )
+      {
+        try
+        {
+          Files.deleteIfExists( e.getValue() );
+        } catch ( IOException ex )
+        {
+          // Deleted next time
+        }
+      }
+    }
+  }
+
+  /**
+   * Delete all the journal files, used when the database is created
+   * @param name Name of the journal files
+   */
+  public static void discard( String name )
+  {
+    StockJournal journal = new StockJournal( name );
+    journal.deleteBefore( Integer.MAX_VALUE );
+  }
+
+  private Path segment( int n )
+  {
+    return Paths.get( theName + "." + n );
+  }
+
+  /**
+   * The segment files of the journal
+   * @return Segments by number
+   */
+  private TreeMap<Integer,Path> segments()
+  {
+    TreeMap<Integer,Path> res = new TreeMap<>();
+    Path dir = Paths.get( theName ).toAbsolutePath().getParent();
+    String prefix = Paths.get( theName ).getFileName() + ".";
+    try ( DirectoryStream<Path> files =
+            Files.newDirectoryStream( dir, prefix + "*" ) )
+    {
+      for ( Path file : files )
+      {
+        try
+        {
+          res.put( Integer.parseInt( file.getFileName().toString()
+                                         .substring( prefix.length() ) ),
+                   file );
+        } catch ( NumberFormatException e )
+        {
+          // Not a segment
+        }
+      }
+    } catch ( IOException e )
+    {
+      // No segments
+    }
+    return res;
+  }
+}
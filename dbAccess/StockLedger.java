@@ -0,0 +1,826 @@
+package dbAccess;
+
+import debug.DEBUG;
+
+import java.io.IOException;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+  * Stock levels held in memory, the stock level of a product
+  *  is read from the database the first time it is changed.
+  * Stock is taken with compare and set, so buyers never wait
+  *  for each other, even when buying the same product.
+  * Each change is written to a journal file, and is only made once
+  *  the journal is on the disk, so a sale is not lost if the machine
+  *  stops. A change that can not be written to the journal is not
+  *  made and the caller is told. Each change is added to the change
+  *  waiting to be written for the product. These are written to
+  *  StockTable in one transaction by a background thread, a short
+  *  time after the first change or as soon as enough have been made.
+  * When the program starts any changes in the journal that the
+  *  database does not hold are written to it. A change to a product
+  *  the database will not take is put aside, so it does not stop
+  *  the others being written.
+  * The sequence number a change has in the journal is the version
+  *  of the stock list it makes. The recent changes are also held
+  *  in memory, and the product and version of the last change to
+  *  each product written are added to StockChangeLog, so clients
+  *  can ask which products have changed since a version.
+  * @version 1.0
+  */
+
+public class StockLedger
+{
+  private static final String SQL_LEVEL =
+    "select stockLevel from StockTable where productNo = ?";
+  private static final String SQL_CHANGE =
+    "update StockTable set stockLevel = stockLevel + ? " +
+    "  where productNo = ?";
+  private static final String SQL_MARK =
+    "select lastSeq from StockJournalMark";
+  private static final String SQL_SET_MARK =
+    "update StockJournalMark set lastSeq = ?";
+  private static final String SQL_LOG =
+    "insert into StockChangeLog values ( ?, ? )";
+  private static final String SQL_LOG_PRUNE =
+    "delete from StockChangeLog where version <= ?";
+  private static final String SQL_LOG_PRUNED =
+    "update StockJournalMark set logFrom = ? where logFrom < ?";
+  private static final String SQL_LOG_FROM =
+    "select logFrom from StockJournalMark";
+  private static final String SQL_LOG_SINCE =
+    "select distinct productNo from StockChangeLog where version > ?";
+
+  private static final int  RECENT = 65536;         // Changes in memory
+  private static final long KEEP   = 100000;        // Versions in table
+
+  private final long         theDelay;              // ms before write
+  private final int          theBatch;              // Changes to write
+  private final StockJournal theJournal;            // Changes not written
+
+  // Stock level of each product read, and change not yet written
+  private final ConcurrentHashMap<String,AtomicInteger> theLevels =
+    new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String,AtomicInteger> thePending =
+    new ConcurrentHashMap<>();
+  // Version of the last change to each product not yet written,
+  //  changed only when holding theJournal
+  private final Map<String,Long> theVersions = new HashMap<>();
+
+  private final AtomicBoolean theScheduled = new AtomicBoolean( false );
+  private final AtomicInteger theChanges   = new AtomicInteger();
+  private final ScheduledExecutorService theWriter =
+    Executors.newSingleThreadScheduledExecutor( r -> {
+      Thread t = new Thread( r, "StockLedger writer" );
+      t.setDaemon( true );
+      return t;
+    } );
+
+  private volatile ConnectionPool thePool   = null; // Database
+  private volatile StockChangeLog theRecent = null; // Recent changes
+
+  /**
+   * Create a ledger, writing changes when the program ends
+   * @param delay   Time in ms changes are held before being written
+   * @param batch   Number of changes that are written at once
+   * @param journal Name of the journal file
+   */
+  public StockLedger( long delay, int batch, String journal )
+  {
+    theDelay   = delay;
+    theBatch   = batch;
+    theJournal = new StockJournal( journal );
+    Runtime.getRuntime().addShutdownHook(
+      new Thread( this::write, "StockLedger flush" ) );
+  }
+
+  /**
+   * Use the database the pool connects to, the first pool given is used.
+   *  Changes in the journal not in the database are written to it.
+   * @param pool Connections to the database
+   * @throws SQLException if the journal can not be written
+   */
+  synchronized void attach( ConnectionPool pool ) throws SQLException
+  {
+    if ( thePool != null )
+      return;
+    try
+    {
+      replay( pool );
+      theRecent = new StockChangeLog( RECENT, theJournal.lastSeq() );
+      theJournal.start();
+      theJournal.deleteBefore( theJournal.segment() );
+    } catch ( IOException e )
+    {
+      throw new SQLException( "Stock journal: " + e.getMessage(), e );
+    }
+    thePool = pool;
+  }
+
+  /**
+   * Stock level of the product if it is held in the ledger
+   * @param pNum The product number
+   * @return The stock level, empty if not yet read
+   */
+  public OptionalInt levelOf( String pNum )
+  {
+    AtomicInteger level = theLevels.get( pNum );
+    return level == null ? OptionalInt.empty()
+                         : OptionalInt.of( level.get() );
+  }
+
+  /**
+   * Take stock if there is enough
+   * @param pNum   The product number
+   * @param amount Amount of stock to take
+   * @return true if taken, false if not enough or no such product
+   * @throws SQLException if the level can not be read or the
+   *  change can not be written to the journal, nothing is taken
+   */
+  public boolean take( String pNum, int amount ) throws SQLException
+  {
+    AtomicInteger level = load( pNum );
+    try
+    {
+      return level != null && take( level, pNum, amount );
+    } catch ( IOException e )
+    {
+      throw journalFailed( e );
+    }
+  }
+
+  /**
+   * Take the stock for every line, only if there is enough for all
+   *  of them, so that stock is not taken from other buyers while
+   *  it is held for a basket that can not be bought.
+   * If another buyer takes stock between the check and the take,
+   *  the lines already taken are put back.
+   * @param pNums   Product number of each line
+   * @param amounts Amount of stock for each line
+   * @return For each line true if there was enough stock,
+   *  the stock is only taken if all are true
+   * @throws SQLException if a level can not be read or a change
+   *  can not be written to the journal, nothing is taken
+   */
+  public boolean[] takeAll( String[] pNums, int[] amounts )
+         throws SQLException
+  {
+    int n = pNums.length;
+    boolean[]           enough = new boolean[ n ];
+    AtomicInteger[]     levels = new AtomicInteger[ n ];
+    Map<String,Integer> wanted = new HashMap<>();
+    boolean all = true;
+    for ( int i = 0; i < n; i++ )               // Check first
+    {
+      levels[i] = load( pNums[i] );
+      int total = wanted.merge( pNums[i], amounts[i], Integer::sum );
+      enough[i] = levels[i] != null && levels[i].get() >= total;
+      all       = all && enough[i];
+    }
+    if ( ! all )
+      return enough;                            // Nothing taken
+
+    int taken = 0;
+    try
+    {
+      while ( taken < n && take( levels[taken], pNums[taken],
+                                 amounts[taken] ) )
+        taken++;
+      if ( taken < n )
+        enough[taken] = false;                  // Taken by another
+    } catch ( IOException e )
+    {
+      throw journalFailed( e );
+    } finally {
+      if ( taken < n )                          // Also if failed
+        for ( int i = 0; i < taken; i++ )
+          putBack( levels[i], pNums[i], amounts[i] );
+    }
+    return enough;
+  }
+
+  /**
+   * Take stock from a level held if there is enough
+   * @param level  The stock level
+   * @param pNum   The product number
+   * @param amount Amount of stock to take
+   * @return true if taken
+   * @throws IOException if not written to the journal, not taken
+   */
+  private boolean take( AtomicInteger level, String pNum, int amount )
+          throws IOException
+  {
+    int current;
+    do
+    {
+      current = level.get();
+      if ( current < amount )
+        return false;
+    } while ( ! level.compareAndSet( current, current - amount ) );
+    try
+    {
+      changed( pNum, -amount );
+    } catch ( IOException e )
+    {
+      level.addAndGet( amount );                // Not sold
+      throw e;
+    }
+    return true;
+  }
+
+  /**
+   * Put back stock taken, the level is already held
+   * @param level  The stock level
+   * @param pNum   The product number
+   * @param amount Amount of stock taken
+   */
+  private void putBack( AtomicInteger level, String pNum, int amount )
+  {
+    level.addAndGet( amount );
+    keep( pNum, amount );                       // Was held by take
+  }
+
+  /**
+   * Add stock
+   * @param pNum   The product number
+   * @param amount Amount of stock to add
+   * @return false if no such product
+   * @throws SQLException if the level can not be read or the
+   *  change can not be written to the journal, nothing is added
+   */
+  public boolean add( String pNum, int amount ) throws SQLException
+  {
+    AtomicInteger level = load( pNum );
+    if ( level == null )
+      return false;
+    level.addAndGet( amount );
+    try
+    {
+      changed( pNum, amount );
+    } catch ( IOException e )
+    {
+      level.addAndGet( -amount );
+      throw journalFailed( e );
+    }
+    return true;
+  }
+
+  /**
+   * Set the stock level, the product is taken to have changed
+   *  even if the stock level has not, as its details have
+   * @param pNum  The product number
+   * @param value New stock level
+   * @return false if no such product
+   * @throws SQLException if the level can not be read or the
+   *  change can not be written to the journal, the level is not set
+   */
+  public boolean set( String pNum, int value ) throws SQLException
+  {
+    AtomicInteger level = load( pNum );
+    if ( level == null )
+      return false;
+    int old = level.getAndSet( value );
+    try
+    {
+      record( pNum, value - old, false );
+    } catch ( IOException e )
+    {
+      level.addAndGet( old - value );
+      throw journalFailed( e );
+    }
+    return true;
+  }
+
+  /**
+   * Read the stock level of a product into the ledger, if not held,
+   *  so that it can then be changed without reading the database
+   * @param pNum The product number
+   * @return false if no such product
+   * @throws SQLException if the level can not be read
+   */
+  public boolean hold( String pNum ) throws SQLException
+  {
+    return load( pNum ) != null;
+  }
+
+  /**
+   * Set or add to the stock level of a product already held, as part
+   *  of a change already committed to the database, so this can not
+   *  fail. The change is kept even if the journal can not be written.
+   * @param pNum   The product number, held
+   * @param amount New stock level, or stock added
+   * @param add    true if stock is added
+   */
+  void changeHeld( String pNum, int amount, boolean add )
+  {
+    AtomicInteger level = theLevels.get( pNum );
+    if ( level == null )                        // Only if rejected
+    {
+      DEBUG.traceA( "StockLedger: %s not held, level not changed",
+                    pNum );
+      return;
+    }
+    keep( pNum, add ? amount : amount - level.getAndSet( amount ) );
+    if ( add )
+      level.addAndGet( amount );
+  }
+
+  /**
+   * Hold the stock level of a product just added to the database
+   * @param pNum  The product number
+   * @param value Stock level written to the database
+   */
+  void added( String pNum, int value )
+  {
+    theLevels.put( pNum, new AtomicInteger( value ) );
+    keep( pNum, 0 );                            // A new version
+  }
+
+  /**
+   * Version of the stock list, that of the last change
+   * @return version
+   */
+  public long version()
+  {
+    StockChangeLog recent = theRecent;
+    return recent == null ? 0 : recent.latest();
+  }
+
+  /**
+   * The products changed after the version given, found in memory
+   *  if the change is recent or else in StockChangeLog
+   * @param version Last version seen
+   * @return The products, null if changes that old are not known
+   * @throws SQLException if StockChangeLog can not be read
+   */
+  public Set<String> changedSince( long version ) throws SQLException
+  {
+    StockChangeLog recent = theRecent;
+    if ( recent == null )
+      throw new SQLException( "StockLedger: no database" );
+    Set<String> res = recent.since( version );
+    if ( res != null )
+      return res;
+    if ( version > recent.latest() )
+      return null;                              // Not this database
+
+    Set<String> written = new LinkedHashSet<>();
+    try ( PooledConnection con = thePool.borrow() )
+    {
+      PreparedStatement ps = con.prepare( SQL_LOG_SINCE );
+      ps.setLong( 1, version );
+      try ( ResultSet rs = ps.executeQuery() )
+      {
+        while ( rs.next() )
+          written.add( rs.getString( 1 ) );
+      }
+      ps = con.prepare( SQL_LOG_FROM );         // After, as only goes up
+      try ( ResultSet rs = ps.executeQuery() )
+      {
+        if ( ! rs.next() || version < rs.getLong( 1 ) )
+          return null;                          // Forgotten
+      }
+    }
+    written.addAll( recent.since( recent.from() ) );  // Not yet written
+    return written;
+  }
+
+  /**
+   * Write all changes now, waiting until they are written
+   */
+  public void flush()
+  {
+    try
+    {
+      theWriter.submit( this::write ).get();
+    } catch ( InterruptedException e )
+    {
+      Thread.currentThread().interrupt();
+    } catch ( ExecutionException e )
+    {
+      DEBUG.traceA( "StockLedger: flush\n%s", e.getMessage() );
+    }
+  }
+
+  /**
+   * Number of products with changes not yet written
+   * @return products waiting
+   */
+  public int pending()
+  {
+    int n = 0;
+    for ( AtomicInteger change : thePending.values() )
+      if ( change.get() != 0 ) n++;
+    return n;
+  }
+
+  /**
+   * Return the stock level held for the product,
+   *  reading it from the database if needed
+   * @param pNum The product number
+   * @return The stock level, null if the product has no stock level
+   * @throws SQLException if the level can not be read
+   */
+  private AtomicInteger load( String pNum ) throws SQLException
+  {
+    AtomicInteger level = theLevels.get( pNum );
+    if ( level != null )
+      return level;
+    if ( thePool == null )
+      throw new SQLException( "StockLedger: no database" );
+    try ( PooledConnection con = thePool.borrow() )
+    {
+      PreparedStatement ps = con.prepare( SQL_LEVEL );
+      ps.setString( 1, pNum );
+      try ( ResultSet rs = ps.executeQuery() )
+      {
+        if ( ! rs.next() )
+          return null;
+        // Only changes to products held are written, so the
+        // database can not have changed since it was read
+        AtomicInteger read = new AtomicInteger( rs.getInt( 1 ) );
+        level = theLevels.putIfAbsent( pNum, read );
+        return level == null ? read : level;
+      }
+    }
+  }
+
+  /**
+   * Record a change to be written, and arrange for it to be written
+   * @param pNum   The product number
+   * @param amount Change in stock level
+   * @throws IOException if not written to the journal, not recorded
+   */
+  private void changed( String pNum, int amount ) throws IOException
+  {
+    if ( amount != 0 )
+      record( pNum, amount, false );
+  }
+
+  /**
+   * Record a change that has already been made, so must be written
+   *  to the database even if it can not be written to the journal
+   * @param pNum   The product number
+   * @param amount Change in stock level
+   */
+  private void keep( String pNum, int amount )
+  {
+    try
+    {
+      record( pNum, amount, true );
+    } catch ( IOException e )
+    {
+      // Not thrown when kept
+    }
+  }
+
+  /**
+   * Record a change to be written, giving the product a new version
+   *  even if the change is 0, and arrange for it to be written.
+   *  The change is only made once the journal holding it is on the
+   *  disk, changes made at the same time wait for the disk together.
+   * @param pNum   The product number
+   * @param amount Change in stock level
+   * @param kept   true if the change is kept even if the journal fails
+   * @throws IOException if not written to the journal, and not kept
+   */
+  private void record( String pNum, int amount, boolean kept )
+          throws IOException
+  {
+    boolean pended = false;
+    try
+    {
+      long version;
+      synchronized ( theJournal )               // Journal, versions
+      {                                         //  and pending kept
+        version = theJournal.append( pNum, amount ); //  in step
+        theVersions.put( pNum, version );
+        theRecent.record( version, pNum );
+        pend( pNum, amount );
+        pended = true;
+      }
+      theJournal.sync( version );               // Outside, so others
+    } catch ( IOException e )                   //  can join in
+    {
+      if ( ! kept )
+      {
+        if ( pended )
+          synchronized ( theJournal ) { pend( pNum, -amount ); }
+        throw e;
+      }
+      DEBUG.traceA( "StockLedger: journal write failed, change kept\n%s",
+                    e.getMessage() );
+      if ( ! pended )
+      {
+        synchronized ( theJournal )             // Versioned, so it is
+        {                                       //  written to the
+          long version = theJournal.lastSeq();  //  database
+          theVersions.merge( pNum, version, Math::max );
+          theRecent.record( version, pNum );
+          pend( pNum, amount );
+        }
+      }
+    }
+    if ( theChanges.incrementAndGet() == theBatch )
+      theWriter.execute( this::write );         // Enough to write
+  }
+
+  /**
+   * The failure of the journal as seen by the callers of the ledger
+   * @param e The failure
+   * @return An SQLException to throw
+   */
+  private static SQLException journalFailed( IOException e )
+  {
+    return new SQLException( "Stock journal: " + e.getMessage(), e );
+  }
+
+  /**
+   * Add to the change waiting to be written for the product
+   * @param pNum   The product number
+   * @param amount Change in stock level
+   */
+  private void pend( String pNum, int amount )
+  {
+    thePending.computeIfAbsent( pNum, k -> new AtomicInteger() )
+              .addAndGet( amount );
+    if ( theScheduled.compareAndSet( false, true ) )
+      theWriter.schedule( this::write, theDelay, TimeUnit.MILLISECONDS );
+  }
+
+  /**
+   * Write the changes waiting in one transaction, with the sequence
+   *  number of the last change in the journal they include.
+   *  If this fails they are kept to be written later.
+   */
+  private synchronized void write()
+  {
+    if ( thePool == null )
+      return;
+    theScheduled.set( false );                  // Later changes
+    theChanges.set( 0 );                        //  schedule again
+    Map<String,Integer> changes  = new HashMap<>();
+    Map<String,Long>    versions;
+    long mark;
+    int  segment;
+    synchronized ( theJournal )
+    {
+      for ( Map.Entry<String,AtomicInteger> e : thePending.entrySet() )
+      {
+        int amount = e.getValue().getAndSet( 0 );
+        if ( amount != 0 )
+          changes.put( e.getKey(), amount );
+      }
+      versions = new HashMap<>( theVersions );
+      theVersions.clear();
+      if ( changes.isEmpty() && versions.isEmpty() )
+        return;                                 // Nothing taken
+      mark = theJournal.lastSeq();
+      try
+      {
+        theJournal.start();                     // Later changes
+      } catch ( IOException e )
+      {
+        DEBUG.traceA( "StockLedger: new journal segment\n%s",
+                      e.getMessage() );
+      }
+      segment = theJournal.segment();
+    }
+
+    try
+    {
+      Map<String,Integer> rejected =
+        apply( thePool, changes, versions, mark );
+      reject( rejected );
+      theJournal.deleteBefore( segment );       // Now in database
+      DEBUG.trace( "StockLedger: wrote %d changes", versions.size() );
+    } catch ( SQLException e )
+    {
+      DEBUG.traceA( "StockLedger: write failed, will retry\n%s",
+                    e.getMessage() );
+      synchronized ( theJournal )               // Still in journal
+      {
+        changes.forEach( this::pend );
+        versions.forEach( ( pNum, version ) ->
+          theVersions.merge( pNum, version, Math::max ) );
+      }
+    }
+  }
+
+  /**
+   * Write changes found in the journal but not in the database
+   * @param pool Connections to the database
+   * @throws SQLException if they can not be written
+   * @throws IOException if the journal can not be read
+   */
+  private void replay( ConnectionPool pool )
+          throws SQLException, IOException
+  {
+    long mark;
+    try ( PooledConnection con = pool.borrow() )
+    {
+      PreparedStatement ps = con.prepare( SQL_MARK );
+      try ( ResultSet rs = ps.executeQuery() )
+      {
+        mark = rs.next() ? rs.getLong( 1 ) : 0;
+      }
+    }
+
+    Map<String,Integer> changes  = new HashMap<>();
+    Map<String,Long>    versions = new HashMap<>();
+    List<StockJournal.Change> found = theJournal.unapplied( mark );
+    for ( StockJournal.Change c : found )
+    {
+      changes.merge( c.pNum, c.amount, Integer::sum );
+      versions.put( c.pNum, c.seq );           // In order
+    }
+    if ( ! found.isEmpty() )
+    {
+      reject( apply( pool, changes, versions, theJournal.lastSeq() ) );
+      DEBUG.traceA( "StockLedger: %d changes recovered from journal",
+                    found.size() );
+    }
+  }
+
+  /**
+   * Changes that could not be written to StockTable are put in the
+   *  rejected file of the journal, to be looked at, and the levels of
+   *  the products are read from the database again when next used
+   * @param rejected Change in stock level for each product
+   */
+  private void reject( Map<String,Integer> rejected )
+  {
+    for ( Map.Entry<String,Integer> e : rejected.entrySet() )
+    {
+      DEBUG.traceA( "StockLedger: change %d to %s rejected",
+                    e.getValue(), e.getKey() );
+      theLevels.remove( e.getKey() );
+      try
+      {
+        theJournal.reject( e.getKey(), e.getValue() );
+      } catch ( IOException ex )
+      {
+        DEBUG.traceA( "StockLedger: rejected change not saved\n%s",
+                      ex.getMessage() );
+      }
+    }
+  }
+
+  /**
+   * Write changes, the products changed and the journal mark
+   *  in one transaction, forgetting the oldest products changed.
+   *  A change to a product that can not be written, as the product
+   *  is no longer in StockTable or the new level is not allowed,
+   *  is left out so that it does not stop the others being written.
+   * @param pool     Connections to the database
+   * @param changes  Change in stock level for each product
+   * @param versions Version of the last change to each product
+   * @param mark     Sequence number of the last change included
+   * @return The changes left out
+   * @throws SQLException if they can not be written
+   */
+  private static Map<String,Integer> apply( ConnectionPool pool,
+                                            Map<String,Integer> changes,
+                                            Map<String,Long> versions,
+                                            long mark )
+          throws SQLException
+  {
+    Map<String,Integer> rejected = new HashMap<>();
+    try ( PooledConnection con = pool.borrow() )
+    {
+      Connection theCon = con.getConnection();
+      theCon.setAutoCommit( false );
+      if ( ! changeAll( con, changes ) )        // Find which, one by one
+      {
+        theCon.rollback();
+        rejected = changeEach( con, changes );
+      }
+      PreparedStatement ps = con.prepare( SQL_LOG );
+      try
+      {
+        for ( Map.Entry<String,Long> e : versions.entrySet() )
+        {
+          ps.setLong( 1, e.getValue() );
+          ps.setString( 2, e.getKey() );
+          ps.addBatch();
+        }
+        ps.executeBatch();
+      } finally {
+        ps.clearBatch();
+      }
+      ps = con.prepare( SQL_LOG_PRUNE );
+      ps.setLong( 1, mark - KEEP );
+      ps.executeUpdate();
+      ps = con.prepare( SQL_LOG_PRUNED );
+      ps.setLong( 1, mark - KEEP );
+      ps.setLong( 2, mark - KEEP );
+      ps.executeUpdate();
+      ps = con.prepare( SQL_SET_MARK );
+      ps.setLong( 1, mark );
+      ps.executeUpdate();
+      theCon.commit();
+    }
+    return rejected;
+  }
+
+  /**
+   * Change the stock levels in one batch
+   * @param con     Connection to the database, in a transaction
+   * @param changes Change in stock level for each product
+   * @return false if a change was not made
+   * @throws SQLException if the database can not be used
+   */
+  private static boolean changeAll( PooledConnection con,
+                                    Map<String,Integer> changes )
+          throws SQLException
+  {
+    PreparedStatement ps = con.prepare( SQL_CHANGE );
+    try
+    {
+      for ( Map.Entry<String,Integer> e : changes.entrySet() )
+      {
+        ps.setInt( 1, e.getValue() );
+        ps.setString( 2, e.getKey() );
+        ps.addBatch();
+      }
+      for ( int count : ps.executeBatch() )
+        if ( count == 0 || count == Statement.EXECUTE_FAILED )
+          return false;                         // No such product
+      return true;
+    } catch ( BatchUpdateException e )
+    {
+      if ( broken( e ) ) throw e;
+      return false;                             // A change not allowed
+    } finally {
+      ps.clearBatch();
+    }
+  }
+
+  /**
+   * Change the stock levels one at a time, leaving out
+   *  those that can not be made
+   * @param con     Connection to the database, in a transaction
+   * @param changes Change in stock level for each product
+   * @return The changes left out
+   * @throws SQLException if the database can not be used
+   */
+  private static Map<String,Integer> changeEach( PooledConnection con,
+                                          Map<String,Integer> changes )
+          throws SQLException
+  {
+    Map<String,Integer> rejected = new HashMap<>();
+    PreparedStatement ps = con.prepare( SQL_CHANGE );
+    for ( Map.Entry<String,Integer> e : changes.entrySet() )
+    {
+      try
+      {
+        ps.setInt( 1, e.getValue() );
+        ps.setString( 2, e.getKey() );
+        if ( ps.executeUpdate() == 0 )          // No such product
+          rejected.put( e.getKey(), e.getValue() );
+      } catch ( SQLException ex )
+      {
+        if ( broken( ex ) ) throw ex;           // Try all again later
+        rejected.put( e.getKey(), e.getValue() );
+      }
+    }
+    return rejected;
+  }
+
+  /**
+   * Is the failure of the database or connection, rather than
+   *  of the change, so that the change should be tried again
+   * @param e The failure
+   * @return true if the database could not be used
+   */
+  private static boolean broken( SQLException e )
+  {
+    String state = e.getSQLState();
+    return e instanceof SQLTransientException         ||
+           e instanceof SQLNonTransientConnectionException ||
+           e instanceof SQLRecoverableException       ||
+           state == null || state.startsWith( "08" ) ||
+                            state.startsWith( "40" );
+  }
+}
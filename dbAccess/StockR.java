@@ -7,17 +7,34 @@ package dbAccess;
  * @version 2.0
  */
 
+import catalogue.ImageCache;
 import catalogue.Product;
+import catalogue.ProductInfo;
 import debug.DEBUG;
+import middle.StockChanges;
 import middle.StockException;
 import middle.StockReader;
 
 import javax.swing.*;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-// There can only be 1 ResultSet opened per statement
-// so no simultaneous use of the statement object
-// hence the synchronized methods
+// Each request borrows its own connection from a pool
+// so requests do not have to wait for each other
 
 // mySQL
 //    no spaces after SQL statement ;
@@ -27,8 +44,58 @@ import java.sql.*;
   */
 public class StockR implements StockReader
 {
-  private Connection theCon    = null;      // Connection to database
-  private Statement  theStmt   = null;      // Statement object
+  private ConnectionPool thePool = null;     // Connections to database
+
+  // Products read, shared by all readers and writers
+  private static final ProductCache theCache =
+    new ProductCache( 10000, 30000 );        // Products, ms
+
+  // Product numbers known, so unknown numbers are answered at once
+  private static volatile BloomFilter theKnown = null;
+
+  // Words of the descriptions, to search for products
+  private static final DescriptionIndex theIndex = new DescriptionIndex();
+
+  // Stock levels being changed, shared by all readers and writers
+  private static final StockLedger theLedger =
+    new StockLedger( 100, 500,               // ms, changes before written
+                     StockJournal.NAME );
+
+  // Queries with bind parameters, so each is only
+  //  compiled once per connection by the database
+  static final String SQL_EXISTS =
+    "select price from ProductTable where productNo = ?";
+  static final String SQL_LOOKUP =
+    "select ProductTable.productNo, description, price, picture, " +
+    "       stockLevel " +
+    "  from ProductTable left outer join StockTable " +
+    "    on StockTable.productNo = ProductTable.productNo " +
+    "  where  ProductTable.productNo = ?";
+  static final String SQL_COUNT =
+    "select count(*) from ProductTable";
+  static final String SQL_NUMBERS =
+    "select productNo, description from ProductTable";
+  static final int    BATCH_SIZE  = 50;       // Products per query
+  static final String SQL_LOOKUP_BATCH =
+    "select ProductTable.productNo, description, price, picture, " +
+    "       stockLevel " +
+    "  from ProductTable left outer join StockTable " +
+    "    on StockTable.productNo = ProductTable.productNo " +
+    "  where  ProductTable.productNo in (" + params( BATCH_SIZE ) + ")";
+  static final String SQL_SCAN =
+    "select ProductTable.productNo, description, price, picture, " +
+    "       stockLevel " +
+    "  from ProductTable left outer join StockTable " +
+    "    on StockTable.productNo = ProductTable.productNo " +
+    "  order by ProductTable.productNo";
+  static final String SQL_SCAN_PAGE =
+    "select ProductTable.productNo, description, price, picture, " +
+    "       stockLevel " +
+    "  from ProductTable left outer join StockTable " +
+    "    on StockTable.productNo = ProductTable.productNo " +
+    "  where  ProductTable.productNo > ? " +
+    "  order by ProductTable.productNo " +
+    "  fetch first ? rows only";
 
   /**
    * Connects to database
@@ -42,14 +109,9 @@ public class StockR implements StockReader
     {
       DBAccess dbDriver = (new DBAccessFactory()).getNewDBAccess();
       dbDriver.loadDriver();
-    
-      theCon  = DriverManager.getConnection
-                  ( dbDriver.urlOfDatabase(), 
-                    dbDriver.username(), 
-                    dbDriver.password() );
-
-      theStmt = theCon.createStatement();
-      theCon.setAutoCommit( true );
+      thePool = ConnectionPool.of( dbDriver );
+      theLedger.attach( thePool );
+      buildIndexes( thePool );
     }
     catch ( SQLException e )
     {
@@ -61,26 +123,93 @@ public class StockR implements StockReader
     }
   }
 
+  /**
+   * Borrows a connection that is used to process
+   * requests to the DataBase, close it to give it back
+   * @return a connection object
+   * @throws SQLException if no connection available
+   */
+
+  protected PooledConnection getConnectionObject()
+            throws SQLException
+  {
+    return thePool.borrow();
+  }
 
   /**
-   * Returns a statement object that is used to process SQL statements
-   * @return A statement object used to access the database
+   * Returns the cache of products read from the database
+   *  shared by all readers and writers
+   * @return The cache
    */
-  
-  protected Statement getStatementObject()
+  public static ProductCache getCache()
   {
-    return theStmt;
+    return theCache;
   }
 
   /**
-   * Returns a connection object that is used to process
-   * requests to the DataBase
-   * @return a connection object
+   * Record a product number just added to the database
+   * @param pNum The product number
    */
+  protected static void known( String pNum )
+  {
+    theKnown.add( pNum );
+  }
 
-  protected Connection getConnectionObject()
+  /**
+   * Returns the index of the words in the product descriptions
+   * @return The index
+   */
+  protected static DescriptionIndex getIndex()
   {
-    return theCon;
+    return theIndex;
+  }
+
+  /**
+   * Read all the product numbers into the filter of known numbers,
+   *  sized for twice as many products, and index their descriptions,
+   *  once per program run
+   * @param pool Connections to the database
+   * @throws SQLException if problem
+   */
+  private static synchronized void buildIndexes( ConnectionPool pool )
+          throws SQLException
+  {
+    if ( theKnown != null )
+      return;
+    try ( PooledConnection con = pool.borrow();
+          Statement stmt = con.createStatement() )
+    {
+      long count;
+      try ( ResultSet rs = stmt.executeQuery( SQL_COUNT ) )
+      {
+        count = rs.next() ? rs.getLong( 1 ) : 0;
+      }
+      BloomFilter known = new BloomFilter( Math.max( 10000, 2*count ),
+                                           0.01 );
+      stmt.setFetchSize( 1000 );
+      try ( ResultSet rs = stmt.executeQuery( SQL_NUMBERS ) )
+      {
+        while ( rs.next() )
+        {
+          String pNum = rs.getString( 1 ).trim();
+          known.add( pNum );
+          theIndex.put( pNum, rs.getString( 2 ) );
+        }
+      }
+      theKnown = known;
+      DEBUG.trace( "DB StockR: %d product numbers known (%d bytes)",
+                   count, known.bytes() );
+    }
+  }
+
+  /**
+   * Returns the stock levels being changed, newer than
+   *  those in the database, shared by all readers and writers
+   * @return The ledger
+   */
+  public static StockLedger getLedger()
+  {
+    return theLedger;
   }
 
   /**
@@ -88,24 +217,13 @@ public class StockR implements StockReader
    * @param pNum The product number
    * @return true if exists otherwise false
    */
-  public synchronized boolean exists( String pNum )
+  public boolean exists( String pNum )
          throws StockException
   {
-    
-    try
-    {
-      ResultSet rs   = getStatementObject().executeQuery(
-        "select price from ProductTable " +
-        "  where  ProductTable.productNo = '" + pNum + "'"
-      );
-      boolean res = rs.next();
-      DEBUG.trace( "DB StockR: exists(%s) -> %s", 
-                    pNum, ( res ? "T" : "F" ) );
-      return res;
-    } catch ( SQLException e )
-    {
-      throw new StockException( "SQL exists: " + e.getMessage() );
-    }
+    boolean res = lookup( pNum ).isPresent();
+    DEBUG.trace( "DB StockR: exists(%s) -> %s", 
+                  pNum, ( res ? "T" : "F" ) );
+    return res;
   }
 
   /**
@@ -114,31 +232,75 @@ public class StockR implements StockReader
    * @param pNum The product number
    * @return Details in an instance of a Product
    */
-  public synchronized Product getDetails( String pNum )
+  public Product getDetails( String pNum )
          throws StockException
   {
-    try
+    Optional<ProductInfo> pr = lookup( pNum );
+    return pr.isPresent() ? pr.get() : new Product( "0", "", 0.00, 0 );
+  }
+
+  /**
+   * Returns details about many products, reading those not in
+   *  the cache using one query for every BATCH_SIZE products.
+   * @param pNums The product numbers
+   * @return Map of product number to details, in the order asked for
+   */
+  public Map<String,Product> getDetails( Collection<String> pNums )
+         throws StockException
+  {
+    Map<String,Product> found = new HashMap<>();
+    List<String> wanted = new ArrayList<>();
+    BloomFilter known = theKnown;
+    for ( String pNum : pNums )
+    {
+      if ( ! known.mightContain( pNum ) )
+        continue;                                // Not in database
+      ProductInfo pr = theCache.get( pNum );
+      if ( pr != null )
+        found.put( pNum, current( pr ) );
+      else
+        wanted.add( pNum );
+    }
+
+    if ( ! wanted.isEmpty() )
     {
-      Product   dt = new Product( "0", "", 0.00, 0 );
-      ResultSet rs = getStatementObject().executeQuery(
-        "select description, price, stockLevel " +
-        "  from ProductTable, StockTable " +
-        "  where  ProductTable.productNo = '" + pNum + "' " +
-        "  and    StockTable.productNo   = '" + pNum + "'"
-      );
-      if ( rs.next() )
+      long stamp = theCache.stamp();
+      try ( PooledConnection con = getConnectionObject() )
       {
-        dt.setProductNum( pNum );
-        dt.setDescription(rs.getString( "description" ) );
-        dt.setPrice( rs.getDouble( "price" ) );
-        dt.setQuantity( rs.getInt( "stockLevel" ) );
+        PreparedStatement ps = con.prepare( SQL_LOOKUP_BATCH );
+        for ( int from = 0; from < wanted.size(); from += BATCH_SIZE )
+        {
+          List<String> batch =
+            wanted.subList( from, Math.min( from+BATCH_SIZE, wanted.size() ) );
+          for ( int i = 0; i < BATCH_SIZE; i++ ) // Same query shape
+          {                                    //  pad with last number
+            ps.setString( i+1, batch.get( Math.min( i, batch.size()-1 ) ) );
+          }
+          try ( ResultSet rs = ps.executeQuery() )
+          {
+            while ( rs.next() )
+            {
+              ProductInfo pr = productOf( rs );
+              theCache.put( pr, stamp );
+              found.put( pr.getProductNum(), current( pr ) );
+            }
+          }
+        }
+      } catch ( SQLException e )
+      {
+        throw new StockException( "SQL getDetails: " + e.getMessage() );
       }
-      rs.close();
-      return dt;
-    } catch ( SQLException e )
+    }
+
+    Map<String,Product> res = new LinkedHashMap<>();
+    for ( String pNum : pNums )                  // Order asked for
     {
-      throw new StockException( "SQL getDetails: " + e.getMessage() );
+      if ( found.containsKey( pNum ) )
+        res.put( pNum, found.get( pNum ) );
     }
+    DEBUG.trace( "DB StockR: getDetails(%d) -> %d read %d",
+                 pNums.size(), res.size(), wanted.size() );
+    return res;
   }
 
   /**
@@ -147,29 +309,241 @@ public class StockR implements StockReader
    *  Assumed to exist in database.
    * @return ImageIcon representing the image
    */
-  public synchronized ImageIcon getImage( String pNum )
+  public ImageIcon getImage( String pNum )
          throws StockException
   {
     String filename = "default.jpg";  
+    Optional<ProductInfo> pr = lookup( pNum );
+    if ( pr.isPresent() )
+      filename = pr.get().getPicture();
+    //DEBUG.trace( "DB StockR: getImage -> %s", filename );
+    return ImageCache.shared().get( filename );  // Decoded once
+  }
+
+  /**
+   * Returns the product, its stock level and its picture
+   *  from the cache, or using a single query of the database
+   * @param pNum The product number
+   * @return The product, empty if not in the database
+   */
+  public Optional<ProductInfo> lookup( String pNum )
+         throws StockException
+  {
+    if ( ! theKnown.mightContain( pNum ) )        // Certainly not
+      return Optional.empty();                   //  in database
+    ProductInfo cached = theCache.get( pNum );
+    if ( cached != null )
+      return Optional.of( current( cached ) );
+
+    long stamp = theCache.stamp();               // Before read
+    try ( PooledConnection con = getConnectionObject() )
+    {
+      PreparedStatement ps = con.prepare( SQL_LOOKUP );
+      ps.setString( 1, pNum );
+      try ( ResultSet rs = ps.executeQuery() )
+      {
+        if ( ! rs.next() )
+          return Optional.empty();
+        ProductInfo pr = productOf( rs );
+        theCache.put( pr, stamp );
+        return Optional.of( current( pr ) );
+      }
+    } catch ( SQLException e )
+    {
+      throw new StockException( "SQL lookup: " + e.getMessage() );
+    }
+  }
+
+  /**
+   * Returns the products whose descriptions best match the search,
+   *  found using the index of description words
+   * @param words The words searched for
+   * @param max   Maximum number of products returned
+   * @return The products, best match first
+   */
+  public List<Product> search( String words, int max )
+         throws StockException
+  {
+    List<String> found = theIndex.search( words, max );
+    DEBUG.trace( "DB StockR: search(%s) -> %d", words, found.size() );
+    return new ArrayList<>( getDetails( found ).values() );
+  }
+
+  /**
+   * Returns the products changed since the version given,
+   *  the ledger knows which products have changed
+   * @param version Version last seen
+   * @return The changes and the version now
+   */
+  public StockChanges changesSince( long version )
+         throws StockException
+  {
     try
     {
-      ResultSet rs   = getStatementObject().executeQuery(
-        "select picture from ProductTable " +
-        "  where  ProductTable.productNo = '" + pNum + "'"
-      );
-      
-      boolean res = rs.next();
-      if ( res )
-        filename = rs.getString( "picture" );
-      rs.close();
+      long        now     = theLedger.version();   // Before the changes
+      Set<String> changed = theLedger.changedSince( version );
+      DEBUG.trace( "DB StockR: changesSince(%d) -> %d", version,
+                   changed == null ? -1 : changed.size() );
+      if ( changed == null )
+        return new StockChanges( now, Collections.emptyList(), false );
+      return new StockChanges( now,
+                               new ArrayList<>( getDetails( changed )
+                                                  .values() ),
+                               true );
     } catch ( SQLException e )
     {
-      DEBUG.error( "getImage()\n%s\n", e.getMessage() );
-      throw new StockException( "SQL getImage: " + e.getMessage() );
+      throw new StockException( "SQL changesSince: " + e.getMessage() );
     }
-    
-    //DEBUG.trace( "DB StockR: getImage -> %s", filename );
-    return new ImageIcon( filename );
+  }
+
+  /**
+   * Returns all the products in product number order, using a
+   *  cursor that reads fetchSize rows from the database at a time.
+   *  A connection is held until the stream is closed.
+   *  The products are not put in the cache, as a scan would
+   *  push out the products being sold.
+   * @param fetchSize Number of rows read at a time
+   * @return The products
+   */
+  public Stream<Product> scan( int fetchSize )
+         throws StockException
+  {
+    PooledConnection con = null;
+    try
+    {
+      con = getConnectionObject();
+      PreparedStatement ps =                   // Not shared, as held
+        con.getConnection().prepareStatement( SQL_SCAN );
+      ps.setFetchSize( fetchSize );
+      ResultSet rs = ps.executeQuery();
+      PooledConnection held = con;
+      Iterator<Product> rows = new Iterator<Product>()
+      {
+        private boolean theRead = false;       // Row read but not used
+        private boolean theMore = false;
+
+        public boolean hasNext()
+        {
+          if ( ! theRead )
+          {
+            try
+            {
+              theMore = rs.next();
+            } catch ( SQLException e )
+            {
+              throw new IllegalStateException( "SQL scan: " +
+                                               e.getMessage(), e );
+            }
+            theRead = true;
+          }
+          return theMore;
+        }
+
+        public Product next()
+        {
+          if ( ! hasNext() )
+            throw new NoSuchElementException();
+          theRead = false;
+          try
+          {
+            return current( productOf( rs ) );
+          } catch ( SQLException e )
+          {
+            throw new IllegalStateException( "SQL scan: " +
+                                             e.getMessage(), e );
+          }
+        }
+      };
+      DEBUG.trace( "DB StockR: scan(%d)", fetchSize );
+      return StreamSupport.stream(
+               Spliterators.spliteratorUnknownSize(
+                 rows, Spliterator.ORDERED | Spliterator.NONNULL ),
+               false )
+             .onClose( () -> {
+               try
+               {
+                 rs.close();
+                 ps.close();
+               } catch ( SQLException e )
+               {
+                 // Connection is still returned
+               } finally {
+                 held.close();
+               }
+             } );
+    } catch ( SQLException e )
+    {
+      if ( con != null ) con.close();
+      throw new StockException( "SQL scan: " + e.getMessage() );
+    }
+  }
+
+  /**
+   * Returns the next page of products in product number order,
+   *  found using the index on product number
+   * @param after Product number before the page, "" for the first
+   * @param size  Maximum number of products returned
+   * @return The products
+   */
+  public List<Product> scanPage( String after, int size )
+         throws StockException
+  {
+    List<Product> res = new ArrayList<>( size );
+    try ( PooledConnection con = getConnectionObject() )
+    {
+      PreparedStatement ps = con.prepare( SQL_SCAN_PAGE );
+      ps.setString( 1, after );
+      ps.setInt( 2, size );
+      try ( ResultSet rs = ps.executeQuery() )
+      {
+        while ( rs.next() )
+          res.add( current( productOf( rs ) ) );
+      }
+    } catch ( SQLException e )
+    {
+      throw new StockException( "SQL scanPage: " + e.getMessage() );
+    }
+    DEBUG.trace( "DB StockR: scanPage(%s,%d) -> %d",
+                 after, size, res.size() );
+    return res;
+  }
+
+  /**
+   * Use the stock level in the ledger, if the product is in it,
+   *  as it may not have been written to the database yet
+   * @param pr Product as read or cached
+   * @return The same product
+   */
+  private static ProductInfo current( ProductInfo pr )
+  {
+    theLedger.levelOf( pr.getProductNum() ).ifPresent( pr::setQuantity );
+    return pr;
+  }
+
+  /**
+   * Make a product from the current row of a lookup query
+   * @param rs Result of SQL_LOOKUP or SQL_LOOKUP_BATCH
+   * @return The product
+   * @throws SQLException if problem
+   */
+  private static ProductInfo productOf( ResultSet rs )
+          throws SQLException
+  {
+    return new ProductInfo( rs.getString( "productNo" ).trim(),
+                            rs.getString( "description" ),
+                            rs.getDouble( "price" ),
+                            rs.getInt( "stockLevel" ),     // 0 if none
+                            rs.getString( "picture" ) );
+  }
+
+  /**
+   * Return a list of n SQL parameter markers
+   * @param n Number of markers
+   * @return ?, ?, ... ?
+   */
+  private static String params( int n )
+  {
+    return String.join( ", ", Collections.nCopies( n, "?" ) );
   }
 
 }
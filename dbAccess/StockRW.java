@@ -7,23 +7,44 @@ package dbAccess;
  * @version 2.0
  */
 
+import catalogue.Basket;
 import catalogue.Product;
 import debug.DEBUG;
 import middle.StockException;
 import middle.StockReadWriter;
+import middle.StockUpdate;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
-// There can only be 1 ResultSet opened per statement
-// so no simultaneous use of the statement object
-// hence the synchronized methods
-// 
+// Stock levels are changed in the shared StockLedger without
+// locking and written to the database a short time later.
+// Changes to the description of a product are made one at a
+// time by locking the product, and several changes can be made
+// together in one transaction
 
 /**
   * Implements read/write access to the stock database.
   */
 public class StockRW extends StockR implements StockReadWriter 
 {
+  private static final String SQL_INSERT_PRODUCT =
+    "insert into ProductTable values ( ?, ?, ?, ? )";
+  private static final String SQL_INSERT_STOCK =
+    "insert into StockTable values ( ?, ? )";
+  private static final String SQL_UPDATE_PRODUCT =
+    "update ProductTable set description = ?, price = ? " +
+    "  where productNo = ?";
+
+  // Shared by all writers, as they share the same database
+  private static final StripedLock theLocks = new StripedLock( 64 );
+
   /*
    * Connects to database
    */
@@ -34,29 +55,55 @@ public class StockRW extends StockR implements StockReadWriter
   
   /**
    * Customer buys stock, quantity decreased if sucessful.
+   *  The stock is taken in the ledger, the database is
+   *  changed a short time later.
    * @param pNum Product number
    * @param amount Amount of stock bought
    * @return true if succeeds else false
    */
-  public synchronized boolean buyStock( String pNum, int amount )
+  public boolean buyStock( String pNum, int amount )
          throws StockException
   {
-    DEBUG.trace("DB StockRW: buyStock(%s,%d)", pNum, amount);
-    int updates = 0;
+    boolean bought;
     try
     {
-      getStatementObject().executeUpdate(
-        "update StockTable set stockLevel = stockLevel-" + amount +
-        "       where productNo = '" + pNum + "' and " +
-        "             stockLevel >= " + amount + ""
-      );
-      updates = 1; // getStatementObject().getUpdateCount();
+      bought = getLedger().take( pNum, amount );
     } catch ( SQLException e )
     {
       throw new StockException( "SQL buyStock: " + e.getMessage() );
     }
-    DEBUG.trace( "buyStock() updates -> %n", updates );
-    return updates > 0;   // sucess ?
+    DEBUG.trace( "DB StockRW: buyStock(%s,%d) -> %s",
+                 pNum, amount, bought ? "T" : "F" );
+    return bought;
+  }
+
+  /**
+   * Customer buys all the products in the basket, or none of them.
+   *  The stock is only taken if there is enough for every line.
+   *  The changes are written to the database together later.
+   * @param basket Products bought
+   * @return For each line true if there was enough stock
+   */
+  public boolean[] buyStock( Basket basket )
+         throws StockException
+  {
+    String[] pNums   = new String[ basket.size() ];
+    int[]    amounts = new int[ basket.size() ];
+    for ( int i = 0; i < pNums.length; i++ )
+    {
+      pNums[i]   = basket.get(i).getProductNum();
+      amounts[i] = basket.get(i).getQuantity();
+    }
+    boolean[] bought;
+    try
+    {
+      bought = getLedger().takeAll( pNums, amounts );
+    } catch ( SQLException e )
+    {
+      throw new StockException( "SQL buyStock: " + e.getMessage() );
+    }
+    DEBUG.trace( "DB StockRW: buyStock(basket #%d)", basket.getOrderNum() );
+    return bought;
   }
 
   /**
@@ -65,16 +112,12 @@ public class StockRW extends StockR implements StockReadWriter
    * @param pNum Product number
    * @param amount Amount of stock to add
    */
-  public synchronized void addStock( String pNum, int amount )
+  public void addStock( String pNum, int amount )
          throws StockException
   {
     try
     {
-      getStatementObject().executeUpdate(
-        "update StockTable set stockLevel = stockLevel + " + amount +
-        "         where productNo = '" + pNum + "'"
-      );
-      //getConnectionObject().commit();
+      getLedger().add( pNum, amount );
       DEBUG.trace( "DB StockRW: addStock(%s,%d)" , pNum, amount );
     } catch ( SQLException e )
     {
@@ -84,50 +127,132 @@ public class StockRW extends StockR implements StockReadWriter
 
 
   /**
-   * Modifies Stock details for a given product number.
-   *  Assumed to exist in database.
-   * Information modified: Description, Price
+   * Modifies Stock details for a given product number,
+   *  adding the product if it is new.
+   * Information modified: Description, Price, stock level
    * @param detail Product details to change stocklist to
    */
-  public synchronized void modifyStock( Product detail )
+  public void modifyStock( Product detail )
          throws StockException
   {
     DEBUG.trace( "DB StockRW: modifyStock(%s)", 
                  detail.getProductNum() );
+    update( new StockUpdate().modifyStock( detail ) );
+  }
+
+  /**
+   * Makes all the changes in one database transaction, committed once,
+   *  so a product is never left without its stock level.
+   *  The products changed are locked until it is committed.
+   *  The stock levels of the products already in the database are
+   *  read into the ledger before it is committed, so that changing
+   *  them in the ledger once it is committed can not fail.
+   * @param changes Changes to the stock list, made in order
+   */
+  public void update( StockUpdate changes )
+         throws StockException
+  {
+    DEBUG.trace( "DB StockRW: update(%d changes)", changes.size() );
+    List<StockUpdate.Change> list = changes.getChanges();
+    boolean[] inserted = new boolean[ list.size() ];
+    Set<String> added  = new HashSet<>();           // In this update
+    StockLedger ledger = getLedger();
+    ReentrantLock[] locks =                         // Check then insert
+      theLocks.lockAll( changes.getProductNums() );
     try
     {
-      if ( ! exists( detail.getProductNum() ) )
+      try ( PooledConnection con = getConnectionObject() )
       {
-    	getStatementObject().executeUpdate( 
-         "insert into ProductTable values ('" +
-            detail.getProductNum() + "', " + 
-             "'" + detail.getDescription() + "', " + 
-             "'images/Pic" + detail.getProductNum() + ".jpg', " + 
-             "'" + detail.getPrice() + "' " + ")"
-            );
-    	getStatementObject().executeUpdate( 
-           "insert into StockTable values ('" + 
-           detail.getProductNum() + "', " + 
-           "'" + detail.getQuantity() + "' " + ")"
-           ); 
-      } else {
-    	getStatementObject().executeUpdate(
-          "update ProductTable " +
-          "  set description = '" + detail.getDescription() + "' , " +
-          "      price       = " + detail.getPrice() +
-          "  where productNo = '" + detail.getProductNum() + "' "
-         );
-       
-    	getStatementObject().executeUpdate(
-          "update StockTable set stockLevel = " + detail.getQuantity() +
-          "  where productNo = '" + detail.getProductNum() + "'"
-        );
+        Connection theCon = con.getConnection();
+        theCon.setAutoCommit( false );              // Rolled back when
+        for ( int i = 0; i < inserted.length; i++ ) //  returned, unless
+        {                                           //  committed
+          StockUpdate.Change c = list.get(i);
+          String pNum  = c.getProductNum();
+          boolean found = exists( con, pNum );      // Sees own inserts
+          if ( found && ! added.contains( pNum ) && // Level read by
+               ! ledger.hold( pNum ) )              //  ledger now
+            throw new StockException( "No stock level for " + pNum );
+          if ( ! c.isModify() )
+          {
+            if ( ! found )
+              throw new StockException( "No such product " + pNum );
+          } else if ( ! found ) {
+            insert( con, c.getDetail() );
+            inserted[i] = true;
+            added.add( pNum );
+          } else {
+            PreparedStatement ps = con.prepare( SQL_UPDATE_PRODUCT );
+            ps.setString( 1, c.getDetail().getDescription() );
+            ps.setDouble( 2, c.getDetail().getPrice() );
+            ps.setString( 3, pNum );
+            ps.executeUpdate();
+          }
+        }
+        theCon.commit();
+      }
+      for ( String pNum : changes.getProductNums() )
+        getCache().invalidate( pNum );              // Before new version
+
+      for ( int i = 0; i < inserted.length; i++ )   // Committed, so
+      {                                             //  none can fail
+        StockUpdate.Change c = list.get(i);
+        String pNum = c.getProductNum();
+        if ( inserted[i] )
+          ledger.added( pNum, c.getAmount() );
+        else                                        // Held, written
+          ledger.changeHeld( pNum, c.getAmount(),   //  later
+                             ! c.isModify() );
+        if ( c.isModify() )
+          getIndex().put( pNum, c.getDetail().getDescription() );
       }
-      //getConnectionObject().commit();
-      
     } catch ( SQLException e )
     {
-      throw new StockException( "SQL modifyStock: " + e.getMessage() );
+      throw new StockException( "SQL update: " + e.getMessage() );
+    } finally {
+      StripedLock.unlockAll( locks );
     }
   }
+
+  /**
+   * Is the product in ProductTable, as seen by the connection
+   * @param con  Connection to the database
+   * @param pNum The product number
+   * @return true if it is
+   * @throws SQLException if problem
+   */
+  private static boolean exists( PooledConnection con, String pNum )
+          throws SQLException
+  {
+    PreparedStatement ps = con.prepare( SQL_EXISTS );
+    ps.setString( 1, pNum );
+    try ( ResultSet rs = ps.executeQuery() )
+    {
+      return rs.next();
+    }
+  }
+
+  /**
+   * Insert a new product and its stock level
+   * @param con    Connection to the database
+   * @param detail The product
+   * @throws SQLException if problem
+   */
+  private static void insert( PooledConnection con, Product detail )
+          throws SQLException
+  {
+    String pNum = detail.getProductNum();
+    known( pNum );                                  // Before it is found
+    PreparedStatement ps = con.prepare( SQL_INSERT_PRODUCT );
+    ps.setString( 1, pNum );
+    ps.setString( 2, detail.getDescription() );
+    ps.setString( 3, "images/Pic" + pNum + ".jpg" );
+    ps.setDouble( 4, detail.getPrice() );
+    ps.executeUpdate();
+
+    ps = con.prepare( SQL_INSERT_STOCK );
+    ps.setString( 1, pNum );
+    ps.setInt( 2, detail.getQuantity() );
+    ps.executeUpdate();
+  }
 }
@@ -0,0 +1,89 @@
+package dbAccess;
+
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+  * A fixed set of locks shared out between product numbers.
+  * Changes to the same product always use the same lock,
+  *  so they are made one at a time, while changes to products
+  *  that use different locks are made at the same time.
+  * Several locks are always taken in the same order,
+  *  so two users locking overlapping sets can not deadlock.
+  * @version 1.0
+  */
+
+public class StripedLock
+{
+  private final ReentrantLock[] theLocks;
+
+  /**
+   * Create the locks
+   * @param stripes Number of locks, more allows more changes at once
+   */
+  public StripedLock( int stripes )
+  {
+    theLocks = new ReentrantLock[ Math.max( 1, stripes ) ];
+    for ( int i = 0; i < theLocks.length; i++ )
+      theLocks[i] = new ReentrantLock();
+  }
+
+  /**
+   * Lock the product, waiting if another user has it locked
+   * @param pNum The product number
+   * @return The lock to be given to unlock
+   */
+  public ReentrantLock lock( String pNum )
+  {
+    ReentrantLock lock = theLocks[ stripe( pNum ) ];
+    lock.lock();
+    return lock;
+  }
+
+  /**
+   * Lock all the products, in a fixed order to avoid deadlock
+   * @param pNums The product numbers
+   * @return The locks to be given to unlock
+   */
+  public ReentrantLock[] lockAll( Collection<String> pNums )
+  {
+    int[] stripes = pNums.stream()
+                         .mapToInt( this::stripe )
+                         .distinct()
+                         .sorted()
+                         .toArray();
+    ReentrantLock[] locks = new ReentrantLock[ stripes.length ];
+    for ( int i = 0; i < stripes.length; i++ )
+    {
+      locks[i] = theLocks[ stripes[i] ];
+      locks[i].lock();
+    }
+    return locks;
+  }
+
+  /**
+   * Release locks taken by lockAll
+   * @param locks The locks
+   */
+  public static void unlockAll( ReentrantLock[] locks )
+  {
+    for ( int i = locks.length - 1; i >= 0; i-- )
+      locks[i].unlock();
+  }
+
+  /**
+   * Number of locks
+   * @return stripes
+   */
+  public int stripes()
+  {
+    return theLocks.length;
+  }
+
+  private int stripe( String pNum )
+  {
+    int h = pNum.trim().hashCode();
+    h ^= ( h >>> 16 );                          // Spread the bits
+    return ( h & 0x7fffffff ) % theLocks.length;
+  }
+}
@@ -2,9 +2,13 @@ package middle;
 
 import catalogue.Basket;
 import debug.DEBUG;
+import remote.R_OrderListener;
 import remote.RemoteOrder_I;
 
 import java.rmi.Naming;
+import java.rmi.NoSuchObjectException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -21,20 +25,28 @@ import java.util.Map;
 
 public class F_Order implements OrderProcessing
 {
-  private RemoteOrder_I aR_Order    = null;
+  private volatile RemoteOrder_I aR_Order = null; // Not all synchronized
   private String        theOrderURL = null;
+  // Object called back by the middle tier for each listener
+  private final Map<OrderListener,R_OrderListener> theCallbacks =
+    new HashMap<>();
 
   public F_Order(String url)
   {
     theOrderURL = url;
   }
   
-  private void connect() throws OrderException
+  // The listeners are asked for again, as the middle tier may have
+  //  been restarted or have dropped them when it could not call back
+  private synchronized void connect() throws OrderException
   {
     try                                            // Setup
     {                                              //  connection
-      aR_Order =                                   //  Connect to
+      RemoteOrder_I order =                        //  Connect to
        (RemoteOrder_I) Naming.lookup(theOrderURL); // Stub returned
+      for ( R_OrderListener callback : theCallbacks.values() )
+        order.addOrderListener( callback );        // Again
+      aR_Order = order;
     }
     catch ( Exception e )                          // Failure to
     {                                              //  attach to the
@@ -97,6 +109,32 @@ public class F_Order implements OrderProcessing
     }
   }
 
+  /**
+   * Returns an order to pick from the warehouse, waiting up to
+   * timeout ms for one to arrive, if none then returns null.
+   * Not synchronized, as other requests must not wait for it.
+   * @param timeout ms to wait
+   * @return An order to pick
+   */
+
+  public Basket getOrderToPick( long timeout )
+         throws OrderException
+  {
+    DEBUG.trace("F_Order:getOrderToPick(%d)", timeout );
+    try
+    {
+      if ( aR_Order == null ) connect();
+      RemoteOrder_I order = aR_Order;              // May be reset
+      if ( order == null )                         //  meanwhile
+        throw new OrderException( "Not connected" );
+      return order.getOrderToPick( timeout );
+    } catch ( Exception e )
+    {
+      aR_Order = null;
+      throw new OrderException( "Net: " + e.getMessage() );
+    }
+  }
+
   /**
    * Informs the order processing system that the order has been
    * picked and the products are now on the conveyor belt to
@@ -156,4 +194,82 @@ public class F_Order implements OrderProcessing
       throw new OrderException( "Net: " + e.getMessage() );
     }
   }
+
+  /**
+   * Returns the changes to orders since the version given,
+   *  nothing more than an empty list if none
+   */
+
+  public synchronized OrderChanges changesSince( long version )
+         throws OrderException
+  {
+    DEBUG.trace("F_Order:changesSince()" );
+    try
+    {
+      if ( aR_Order == null ) connect();
+      return aR_Order.changesSince( version );
+    } catch ( Exception e )
+    {
+      aR_Order = null;
+      throw new OrderException( "Net: " + e.getMessage() );
+    }
+  }
+
+  /**
+   * Asks to be told of changes to orders, the middle tier
+   * calls back an object made here for the listener.
+   * Asking again for a listener already added makes sure the
+   * middle tier still holds it, as it drops those it can not call
+   */
+
+  public synchronized void addOrderListener( OrderListener l )
+         throws OrderException
+  {
+    DEBUG.trace("F_Order:addOrderListener()" );
+    try
+    {
+      if ( aR_Order == null ) connect();
+      R_OrderListener callback = theCallbacks.get( l );
+      if ( callback == null )
+      {
+        callback = new R_OrderListener( l );
+        theCallbacks.put( l, callback );
+      }
+      aR_Order.addOrderListener( callback );       // Ignored if held
+    } catch ( Exception e )
+    {
+      aR_Order = null;
+      throw new OrderException( "Net: " + e.getMessage() );
+    }
+  }
+
+  /**
+   * No longer be told of changes to orders
+   */
+
+  public synchronized void removeOrderListener( OrderListener l )
+         throws OrderException
+  {
+    DEBUG.trace("F_Order:removeOrderListener()" );
+    R_OrderListener callback = theCallbacks.remove( l );
+    if ( callback == null )
+      return;
+    try
+    {
+      if ( aR_Order == null ) connect();
+      aR_Order.removeOrderListener( callback );
+    } catch ( Exception e )
+    {
+      aR_Order = null;
+      throw new OrderException( "Net: " + e.getMessage() );
+    } finally {
+      try
+      {
+        UnicastRemoteObject.unexportObject( callback, true );
+      } catch ( NoSuchObjectException e )
+      {
+        // Already gone
+      }
+    }
+  }
 }
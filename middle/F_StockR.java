@@ -10,12 +10,24 @@ package middle;
  */
 
 import catalogue.Product;
+import catalogue.ProductInfo;
 import debug.DEBUG;
 import remote.RemoteStockR_I;
 
 import javax.swing.*;
 import java.rmi.Naming;
 import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Setup connection to the middle tier
@@ -89,6 +101,27 @@ public class F_StockR implements StockReader
   }
   
   
+  /**
+   * Returns details about many products in a single call
+   * @return Map of product number to details
+   */
+
+  public synchronized Map<String,Product> getDetails(
+                                     Collection<String> numbers )
+         throws StockException
+  {
+    DEBUG.trace("F_StockR:getDetails(%d)", numbers.size() );
+    try
+    {
+      if ( aR_StockR == null ) connect();
+      return aR_StockR.getDetails( new ArrayList<>( numbers ) );
+    } catch ( RemoteException e )
+    {
+      aR_StockR = null;
+      throw new StockException( "Net: " + e.getMessage() );
+    }
+  }
+
   public synchronized ImageIcon getImage( String number )
          throws StockException
   {
@@ -105,4 +138,136 @@ public class F_StockR implements StockReader
     }
   }
 
+  /**
+   * Returns details, stock level and picture of the product
+   *  in a single call to the middle tier
+   * @return The product, empty if it does not exist
+   */
+
+  public synchronized Optional<ProductInfo> lookup( String number )
+         throws StockException
+  {
+    DEBUG.trace("F_StockR:lookup()" );
+    try
+    {
+      if ( aR_StockR == null ) connect();
+      return Optional.ofNullable( aR_StockR.lookup( number ) );
+    }
+    catch ( RemoteException e )
+    {
+      aR_StockR = null;
+      throw new StockException( "Net: " + e.getMessage() );
+    }
+  }
+
+  /**
+   * Returns the next page of products in product number order
+   * @return The products
+   */
+
+  public synchronized List<Product> scanPage( String after, int size )
+         throws StockException
+  {
+    DEBUG.trace("F_StockR:scanPage(%s,%d)", after, size );
+    try
+    {
+      if ( aR_StockR == null ) connect();
+      return aR_StockR.scanPage( after, size );
+    }
+    catch ( RemoteException e )
+    {
+      aR_StockR = null;
+      throw new StockException( "Net: " + e.getMessage() );
+    }
+  }
+
+  /**
+   * Returns the products whose descriptions best match the search
+   * @return The products, best match first
+   */
+
+  public synchronized List<Product> search( String words, int max )
+         throws StockException
+  {
+    DEBUG.trace("F_StockR:search(%s)", words );
+    try
+    {
+      if ( aR_StockR == null ) connect();
+      return aR_StockR.search( words, max );
+    }
+    catch ( RemoteException e )
+    {
+      aR_StockR = null;
+      throw new StockException( "Net: " + e.getMessage() );
+    }
+  }
+
+  /**
+   * Returns the products changed since the version given
+   * @return The changes and the version now
+   */
+
+  public synchronized StockChanges changesSince( long version )
+         throws StockException
+  {
+    DEBUG.trace("F_StockR:changesSince(%d)", version );
+    try
+    {
+      if ( aR_StockR == null ) connect();
+      return aR_StockR.changesSince( version );
+    }
+    catch ( RemoteException e )
+    {
+      aR_StockR = null;
+      throw new StockException( "Net: " + e.getMessage() );
+    }
+  }
+
+  /**
+   * Returns all the products in product number order,
+   *  asking the middle tier for a page of fetchSize at a time
+   *  as they are used
+   * @return The products
+   */
+
+  public Stream<Product> scan( int fetchSize )
+  {
+    Iterator<Product> pages = new Iterator<Product>()
+    {
+      private List<Product> thePage = new ArrayList<>();
+      private int           theNext = 0;
+      private boolean       theEnd  = false;
+
+      public boolean hasNext()
+      {
+        if ( theNext == thePage.size() && ! theEnd )
+        {
+          String after = thePage.isEmpty()
+                         ? "" : thePage.get( theNext-1 ).getProductNum();
+          try
+          {
+            thePage = scanPage( after, fetchSize );
+          } catch ( StockException e )
+          {
+            throw new IllegalStateException( "Scan: " + e.getMessage(), e );
+          }
+          theNext = 0;
+          theEnd  = thePage.size() < fetchSize;
+        }
+        return theNext < thePage.size();
+      }
+
+      public Product next()
+      {
+        if ( ! hasNext() )
+          throw new NoSuchElementException();
+        return thePage.get( theNext++ );
+      }
+    };
+    return StreamSupport.stream(
+             Spliterators.spliteratorUnknownSize(
+               pages, Spliterator.ORDERED | Spliterator.NONNULL ),
+             false );
+  }
+
 }
@@ -9,6 +9,7 @@ package middle;
  * @version 2.0
  */
 
+import catalogue.Basket;
 import catalogue.Product;
 import debug.DEBUG;
 import remote.RemoteStockRW_I;
@@ -70,6 +71,28 @@ public class F_StockRW extends F_StockR
     }
   }
 
+  /**
+   * Buys all the products in the basket in a single call
+   * @param basket products and quantities required
+   * @return for each line true if it could be bought
+   * @throws StockException if remote exception
+   */
+
+  public boolean[] buyStock( Basket basket )
+         throws StockException
+  {
+    DEBUG.trace("F_StockRW:buyStock(basket)" );
+    try
+    {
+      if ( aR_StockRW == null ) connect();
+      return aR_StockRW.buyStock( basket );
+    } catch ( RemoteException e )
+    {
+      aR_StockRW = null;
+      throw new StockException( "Net: " + e.getMessage() );
+    }
+  }
+
   /**
    * Adds (Restocks) stock to the product list
    * @param number Stock number
@@ -114,4 +137,25 @@ public class F_StockRW extends F_StockR
     }
   }
 
+  /**
+   * Makes all the changes as one unit of work, in a single call
+   * @param changes Changes to the stock list, made in order
+   * @throws StockException if remote exception, or none made
+   */
+
+  public void update( StockUpdate changes )
+              throws StockException
+  {
+    DEBUG.trace("F_StockRW:update(%d)", changes.size() );
+    try
+    {
+      if ( aR_StockRW == null ) connect();
+      aR_StockRW.update( changes );
+    } catch ( RemoteException e )
+    {
+      aR_StockRW = null;
+      throw new StockException( "Net: " + e.getMessage() );
+    }
+  }
+
 }
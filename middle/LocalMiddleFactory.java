@@ -5,9 +5,8 @@
 
 package middle;
 
-import dbAccess.StockR;
-import dbAccess.StockRW;
-import orders.Order;
+import dbAccess.DBAccessFactory;
+import orders.OrderFactory;
 
 
 /**
@@ -19,9 +18,9 @@ import orders.Order;
 
 public class LocalMiddleFactory implements MiddleFactory
 {
-  private static StockR  aStockR  = null;
-  private static StockRW aStockRW = null;
-  private static Order   aOrder   = null;
+  private static StockReader     aStockR  = null;
+  private static StockReadWriter aStockRW = null;
+  private static OrderProcessing aOrder   = null;
   
   /**
    * Return an object to access the database for read only access.
@@ -31,7 +30,7 @@ public class LocalMiddleFactory implements MiddleFactory
   public StockReader makeStockReader() throws StockException
   {
     if ( aStockR == null )
-      aStockR = new StockR();
+      aStockR = (new DBAccessFactory()).getNewStockReader();
     return aStockR;
   }
 
@@ -43,19 +42,20 @@ public class LocalMiddleFactory implements MiddleFactory
   public StockReadWriter makeStockReadWriter() throws StockException
   {
     if ( aStockRW == null )
-      aStockRW = new StockRW();
+      aStockRW = (new DBAccessFactory()).getNewStockReadWriter();
     return aStockRW;
   }
   
   /**
-   * Return an object to access the order processing system.
+   * Return an object to access the order processing system,
+   *  the kind chosen by OrderFactory.
    * All users share this same object.
    */
    
   public OrderProcessing makeOrderProcessing() throws OrderException
   {
     if ( aOrder == null )
-      aOrder = new Order();
+      aOrder = OrderFactory.makeOrderProcessing();
     return aOrder;
   }
 }
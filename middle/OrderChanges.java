@@ -0,0 +1,152 @@
+package middle;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The changes of state of orders since a version a client last saw,
+ *  so that a display can bring its copy of the orders up to date
+ *  without reading every order again.
+ * If the changes are full, as the order processing system no longer
+ *  knows of changes that old, they are the state of every order in
+ *  the system and the client should forget the orders it holds first.
+ * Each change is the state an order is now in, so applying changes
+ *  already seen again does no harm.
+ * <PRE>
+ *  OrderChanges changes = theOrder.changesSince( seen );
+ *  if ( changes.isFull() ) forget all orders held
+ *  changes.applyTo( orders );
+ *  seen = changes.getVersion();
+ * </PRE>
+ * @version 1.0
+ */
+
+public class OrderChanges implements Serializable
+{
+  private static final long serialVersionUID = 1;
+
+  /**
+   * An order now in a new state
+   */
+  public static final class Change implements Serializable
+  {
+    private static final long serialVersionUID = 1;
+
+    private final int    theOrderNum;
+    private final String theState;
+
+    public Change( int orderNum, String state )
+    {
+      theOrderNum = orderNum;
+      theState    = state;
+    }
+
+    /**
+     * The order changed
+     * @return The order number
+     */
+    public int getOrderNum()
+    {
+      return theOrderNum;
+    }
+
+    /**
+     * The state the order is now in
+     * @return "Waiting", "BeingPicked", "ToBeCollected"
+     *         or OrderListener.COLLECTED if it has left the system
+     */
+    public String getState()
+    {
+      return theState;
+    }
+  }
+
+  private final long              theVersion;
+  private final ArrayList<Change> theChanges;
+  private final boolean           theFull;
+
+  /**
+   * The changes made since a version
+   * @param version Version of the orders they bring a client to
+   * @param changes The changes, oldest first
+   */
+  public OrderChanges( long version, List<Change> changes )
+  {
+    theVersion = version;
+    theChanges = new ArrayList<>( changes );
+    theFull    = false;
+  }
+
+  /**
+   * Every order in the system, as returned by getOrderState
+   * @param version Version of the orders they bring a client to
+   * @param state   Order numbers in each state
+   */
+  public OrderChanges( long version, Map<String,List<Integer>> state )
+  {
+    theVersion = version;
+    theChanges = new ArrayList<>();
+    theFull    = true;
+    for ( Map.Entry<String,List<Integer>> e : state.entrySet() )
+      for ( Integer orderNum : e.getValue() )
+        theChanges.add( new Change( orderNum, e.getKey() ) );
+  }
+
+  /**
+   * Version of the orders the changes bring a client to,
+   *  to be given when next asking for changes
+   * @return version
+   */
+  public long getVersion()
+  {
+    return theVersion;
+  }
+
+  /**
+   * The changes, oldest first
+   * @return The changes
+   */
+  public List<Change> getChanges()
+  {
+    return Collections.unmodifiableList( theChanges );
+  }
+
+  /**
+   * Are these every order in the system
+   * @return true if the orders held by a client should be forgotten
+   */
+  public boolean isFull()
+  {
+    return theFull;
+  }
+
+  /**
+   * Has nothing changed since the version given
+   * @return true if the client is up to date
+   */
+  public boolean isUnchanged()
+  {
+    return ! theFull && theChanges.isEmpty();
+  }
+
+  /**
+   * Bring a copy of the state of the orders up to date,
+   *  forgetting the orders held first if these are full
+   * @param orders The state of each order held, by order number
+   */
+  public void applyTo( Map<Integer,String> orders )
+  {
+    if ( theFull )
+      orders.clear();
+    for ( Change c : theChanges )
+    {
+      if ( OrderListener.COLLECTED.equals( c.getState() ) )
+        orders.remove( c.getOrderNum() );
+      else
+        orders.put( c.getOrderNum(), c.getState() );
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package middle;
+
+import java.util.EventListener;
+
+/**
+  * Told when an order changes state, so that a display
+  *  can be redrawn only when something has changed.
+  * Called on a thread of the order processing system,
+  *  after the change is made, so should return quickly.
+  * Changes made while an earlier one is still being passed on
+  *  are coalesced, the listener is then told only of the latest.
+  * @version 1.0
+  */
+
+public interface OrderListener extends EventListener
+{
+  String COLLECTED = "Collected";              // Left the system
+
+  /**
+   * An order has changed state
+   * @param orderNum The order number
+   * @param state    "Waiting", "BeingPicked", "ToBeCollected"
+   *                 or COLLECTED
+   */
+  void orderChanged( int orderNum, String state );
+}
@@ -22,6 +22,10 @@ public interface OrderProcessing
    
   public Basket getOrderToPick()                   // Picker
          throws OrderException;
+
+  // Waits up to timeout ms for an order, null if none arrives
+  public Basket getOrderToPick(long timeout)       // Picker
+         throws OrderException;
  
   public boolean informOrderPicked(int orderNum)   // Picker 
          throws OrderException;
@@ -31,4 +35,15 @@ public interface OrderProcessing
          
   public Map<String,List<Integer>> getOrderState() // Display
          throws OrderException;
+
+  // Only the changes since the version last seen
+  public OrderChanges changesSince(long version)   // Display
+         throws OrderException;
+
+  // Told of each change of state of an order
+  public void addOrderListener(OrderListener l)    // Display
+         throws OrderException;
+
+  public void removeOrderListener(OrderListener l) // Display
+         throws OrderException;
 }
@@ -0,0 +1,75 @@
+package middle;
+
+import catalogue.Product;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The products changed in the stock list since a version
+ *  a client last saw, so that it can bring its copy up to date
+ *  without reading every product again.
+ * If the changes are not complete, as the stock list no longer
+ *  knows of changes that old, the client should read every
+ *  product again, these are at least as new as the version given.
+ * <PRE>
+ *  StockChanges changes = theStock.changesSince( seen );
+ *  if ( changes.isComplete() ) update with changes.getProducts()
+ *  else                        read all again
+ *  seen = changes.getVersion();
+ * </PRE>
+ * @version 1.0
+ */
+
+public class StockChanges implements Serializable
+{
+  private static final long serialVersionUID = 1;
+
+  private final long               theVersion;
+  private final ArrayList<Product> theProducts;
+  private final boolean            theComplete;
+
+  /**
+   * The changes found
+   * @param version  Version of the stock list they bring a client to
+   * @param products Current details of the products changed
+   * @param complete false if a client must read every product again
+   */
+  public StockChanges( long version, List<Product> products,
+                       boolean complete )
+  {
+    theVersion  = version;
+    theProducts = new ArrayList<>( products );
+    theComplete = complete;
+  }
+
+  /**
+   * Version of the stock list the changes bring a client to,
+   *  to be given when next asking for changes
+   * @return version
+   */
+  public long getVersion()
+  {
+    return theVersion;
+  }
+
+  /**
+   * Current details of the products changed, each once
+   * @return The products
+   */
+  public List<Product> getProducts()
+  {
+    return Collections.unmodifiableList( theProducts );
+  }
+
+  /**
+   * Are these all the products changed
+   * @return false if every product must be read again
+   */
+  public boolean isComplete()
+  {
+    return theComplete;
+  }
+}
@@ -1,5 +1,6 @@
 package middle;
 
+import catalogue.Basket;
 import catalogue.Product;
 
 /**
@@ -20,6 +21,16 @@ public interface StockReadWriter extends StockReader
    */
   boolean buyStock(String pNum, int amount) throws StockException;
 
+  /**
+   * Customer buys the whole basket as one transaction.
+   * Either every line is bought or, if any line can not be
+   *  bought, none are and the stock list is unchanged.
+   * @param basket Products and quantities bought
+   * @return For each line of the basket true if it can be bought
+   * @throws middle.StockException if issue
+   */
+  boolean[] buyStock(Basket basket) throws StockException;
+
   /**
    * Adds stock (Restocks) to store.
    * @param pNum Product number
@@ -36,4 +47,13 @@ public interface StockReadWriter extends StockReader
    */
   void modifyStock(Product detail) throws StockException;
 
+  /**
+   * Makes all the changes as one unit of work.
+   * Either every change is made or, if any can not be made,
+   *  none are and the stock list is unchanged.
+   * @param changes Changes to the stock list, made in order
+   * @throws middle.StockException if issue, no change is made
+   */
+  void update(StockUpdate changes) throws StockException;
+
 }
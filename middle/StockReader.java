@@ -1,8 +1,14 @@
 package middle;
 
 import catalogue.Product;
+import catalogue.ProductInfo;
 
 import javax.swing.*;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
   * Interface for read access to the stock list.
@@ -29,6 +35,16 @@ public interface StockReader
    */
   
   Product getDetails(String pNum) throws StockException;
+
+  /**
+   * Returns details about many products in the stock list at once
+   * @param pNums Product numbers
+   * @return Map of product number to product, unknown products absent
+   * @throws StockException if issue
+   */
+
+  Map<String,Product> getDetails(Collection<String> pNums)
+                      throws StockException;
   
   
   /**
@@ -39,4 +55,60 @@ public interface StockReader
    */
   
   ImageIcon getImage(String pNum) throws StockException;
+
+
+  /**
+   * Returns in one request the details, stock level and
+   *  picture file name of the product in the stock list
+   * @param pNum Product nymber
+   * @return The product, empty if it does not exist
+   * @throws StockException if issue
+   */
+
+  Optional<ProductInfo> lookup(String pNum) throws StockException;
+
+
+  /**
+   * Returns all the products in the stock list in product number
+   *  order, read a few at a time so the whole list is never held.
+   *  The stream holds resources so must be closed when finished with.
+   * @param fetchSize Number of products read at a time
+   * @return The products
+   * @throws StockException if issue
+   */
+
+  Stream<Product> scan(int fetchSize) throws StockException;
+
+
+  /**
+   * Returns the next page of products in product number order
+   * @param after Product number before the page, "" for the first page
+   * @param size Maximum number of products returned
+   * @return The products, fewer than size at the end of the stock list
+   * @throws StockException if issue
+   */
+
+  List<Product> scanPage(String after, int size) throws StockException;
+
+
+  /**
+   * Returns the products whose descriptions best match the search,
+   *  each word searched for must start a word of the description
+   * @param words The words searched for
+   * @param max Maximum number of products returned
+   * @return The products, best match first
+   * @throws StockException if issue
+   */
+
+  List<Product> search(String words, int max) throws StockException;
+
+  /**
+   * Returns the products changed since the version of the
+   *  stock list a client last saw, and the version now
+   * @param version Version last seen, 0 at first
+   * @return The changes, if not complete read every product again
+   * @throws StockException if issue
+   */
+
+  StockChanges changesSince(long version) throws StockException;
 }
@@ -0,0 +1,140 @@
+package middle;
+
+import catalogue.Product;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Changes to the stock list made together as one unit of work.
+ * Either every change is made or, if any can not be made,
+ *  none are and the stock list is unchanged.
+ * The changes are made in the order they were added, so stock
+ *  can be added to a product created earlier in the same update.
+ * <PRE>
+ *  theStock.update( new StockUpdate()
+ *                     .modifyStock( new Product( "0010", "Fan", 9.99, 5 ) )
+ *                     .addStock( "0001", 10 ) );
+ * </PRE>
+ * @version 1.0
+ */
+
+public class StockUpdate implements Serializable
+{
+  private static final long serialVersionUID = 1;
+
+  /**
+   * A change to one product
+   */
+  public static final class Change implements Serializable
+  {
+    private static final long serialVersionUID = 1;
+
+    private final Product theDetail;            // Modify, null if add
+    private final String  thePNum;
+    private final int     theAmount;            // Added or new level
+
+    private Change( Product detail, String pNum, int amount )
+    {
+      theDetail = detail;
+      thePNum   = pNum;
+      theAmount = amount;
+    }
+
+    /**
+     * Is the change to the details of the product
+     * @return true if modify, false if stock added
+     */
+    public boolean isModify()
+    {
+      return theDetail != null;
+    }
+
+    /**
+     * New details of the product, including its stock level
+     * @return The details, null if stock is added
+     */
+    public Product getDetail()
+    {
+      return theDetail;
+    }
+
+    /**
+     * The product number changed
+     * @return The product number
+     */
+    public String getProductNum()
+    {
+      return thePNum;
+    }
+
+    /**
+     * Stock added, or the new stock level if modified
+     * @return amount
+     */
+    public int getAmount()
+    {
+      return theAmount;
+    }
+  }
+
+  private final ArrayList<Change> theChanges = new ArrayList<>();
+
+  /**
+   * Modify the details of a product, adding the product if it is new
+   * @param detail Replace with this version of product
+   * @return This update
+   */
+  public StockUpdate modifyStock( Product detail )
+  {
+    theChanges.add( new Change( detail, detail.getProductNum(),
+                                detail.getQuantity() ) );
+    return this;
+  }
+
+  /**
+   * Add stock (Restock) to a product
+   * @param pNum   Product number
+   * @param amount Quantity of product
+   * @return This update
+   */
+  public StockUpdate addStock( String pNum, int amount )
+  {
+    theChanges.add( new Change( null, pNum, amount ) );
+    return this;
+  }
+
+  /**
+   * The changes in the order they are made
+   * @return The changes
+   */
+  public List<Change> getChanges()
+  {
+    return Collections.unmodifiableList( theChanges );
+  }
+
+  /**
+   * The products changed
+   * @return Product numbers, each once
+   */
+  public Set<String> getProductNums()
+  {
+    Set<String> res = new LinkedHashSet<>();
+    for ( Change c : theChanges )
+      res.add( c.getProductNum() );
+    return res;
+  }
+
+  /**
+   * Number of changes
+   * @return changes
+   */
+  public int size()
+  {
+    return theChanges.size();
+  }
+}
@@ -0,0 +1,341 @@
+package orders;
+
+import catalogue.Basket;
+import catalogue.Product;
+import debug.DEBUG;
+import middle.OrderChanges;
+import middle.OrderException;
+import middle.OrderListener;
+import middle.OrderProcessing;
+
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The order processing system, for many tills and pickers at once.<BR>
+ * Manages the progression of customer orders,
+ *  instances of a Basket as they are progressed through the system.
+ * These stages are:
+ * <BR><B>Waiting to be processed<BR>
+ * Currently being picked<BR>
+ * Waiting to be collected<BR></B>
+ * No lock is held on the whole system. The orders in each stage are
+ *  held in a concurrent tray ordered by order number, a picker claims
+ *  the oldest waiting order by taking it from its tray, and an order
+ *  is only locked while it is moved from one tray to the next.
+ * Selected by OrderFactory.
+ * @version 1.0
+ */
+
+public class ConcurrentOrder implements OrderProcessing
+{
+  private enum State {Waiting, BeingPicked, ToBeCollected };
+  /**
+   * Wraps a Basket and it state into a folder,
+   *  the folder is locked while its state is changed
+   */
+  private static final class Folder
+  {
+    private volatile State  stateIs;   // Order state, null if gone
+    private final    Basket basket;    // For this basket
+
+    private Folder( Basket anOrder )
+    {
+      stateIs = State.Waiting;
+      basket  = anOrder;
+    }
+  }
+
+  private static final AtomicInteger theNextNumber =
+    new AtomicInteger( 1 );                     // Start at order 1
+
+  // Active orders in the Catshop system, by order number
+  private final ConcurrentHashMap<Integer,Folder> folders =
+    new ConcurrentHashMap<>();
+  // Orders in each state, oldest (lowest number) first
+  private final ConcurrentSkipListMap<Integer,Folder> waiting =
+    new ConcurrentSkipListMap<>();
+  private final ConcurrentSkipListMap<Integer,Folder> beingPicked =
+    new ConcurrentSkipListMap<>();
+  private final ConcurrentSkipListMap<Integer,Folder> toBeCollected =
+    new ConcurrentSkipListMap<>();
+
+  // Pickers waiting for an order, only locked if there are any
+  private final ReentrantLock theIdleLock = new ReentrantLock();
+  private final Condition     theArrived  = theIdleLock.newCondition();
+  private final AtomicInteger theIdle     = new AtomicInteger();
+
+  private final OrderEvents theEvents = new OrderEvents();
+
+  /**
+   * Used to generate debug information
+   * @param  basket an instance of a basket
+   * @return Description of contents
+   */
+  private String asString( Basket basket )
+  {
+    StringBuilder sb = new StringBuilder(1024);
+    Formatter     fr = new Formatter(sb);
+    fr.format( "#%d (", basket.getOrderNum() );
+    for ( Product pr: basket )
+    {
+       fr.format( "%-15.15s: %3d ", pr.getDescription(), pr.getQuantity() );
+    }
+    fr.format( ")" );
+    fr.close();
+    return sb.toString();
+  }
+
+  /**
+   * Generates a unique order number
+   * @return A unique order number
+   */
+  public int uniqueNumber()
+         throws OrderException
+  {
+    return theNextNumber.getAndIncrement();
+  }
+
+  /**
+   * Add a new order to the order processing system
+   * @param bought A new order that is to be processed
+   * @throws OrderException if an order with the same number is
+   *  already in the system
+   */
+  public void newOrder( Basket bought )
+         throws OrderException
+  {
+    DEBUG.trace( "DEBUG: New order" );
+    int    orderNum = bought.getOrderNum();
+    Folder folder   = new Folder( bought );
+    if ( folders.putIfAbsent( orderNum, folder ) != null )
+      throw new OrderException( "Order " + orderNum + " already exists" );
+    synchronized ( folder )                         // Not moved by a
+    {                                               //  picker until told
+      waiting.put( orderNum, folder );              // In its tray first,
+      theEvents.fire( orderNum, State.Waiting.name() ); // so a list of
+    }                                               //  every order has it
+    if ( theIdle.get() > 0 )                        // Wake a picker
+    {
+      theIdleLock.lock();
+      try
+      {
+        theArrived.signal();
+      } finally {
+        theIdleLock.unlock();
+      }
+    }
+    DEBUG.trace( "Order: " + asString( bought ) );
+  }
+
+  /**
+   * Returns an order to pick from the warehouse, the order that
+   *  has waited longest. Each order is given to only one picker.
+   * @return An order to pick or null if no order
+   */
+  public Basket getOrderToPick()
+         throws OrderException
+  {
+    DEBUG.trace( "DEBUG: Get order to pick" );
+    Map.Entry<Integer,Folder> claimed = waiting.pollFirstEntry();
+    if ( claimed == null )
+      return null;
+    Folder folder = claimed.getValue();             // Only this picker
+    move( folder, State.Waiting, null, State.BeingPicked, beingPicked );
+    return folder.basket;
+  }
+
+  /**
+   * Returns an order to pick from the warehouse, waiting
+   *  until one arrives if there is none
+   * @param timeout Longest time to wait in ms
+   * @return An order to pick or null if none arrived in time
+   */
+  public Basket getOrderToPick( long timeout )
+         throws OrderException
+  {
+    long   left  = TimeUnit.MILLISECONDS.toNanos( timeout );
+    Basket found = getOrderToPick();
+    while ( found == null && left > 0 )
+    {
+      theIdleLock.lock();
+      theIdle.incrementAndGet();                    // Before looking,
+      try                                           //  so an order added
+      {                                             //  now wakes us
+        if ( waiting.isEmpty() )
+          left = theArrived.awaitNanos( left );
+      } catch ( InterruptedException e )
+      {
+        Thread.currentThread().interrupt();
+        return null;
+      } finally {
+        theIdle.decrementAndGet();
+        theIdleLock.unlock();
+      }
+      found = getOrderToPick();
+    }
+    return found;
+  }
+
+  /**
+   * Informs the order processing system that the order has been
+   * picked and the products are now being delivered to the
+   * collection desk
+   * @param  orderNum The order that has been picked
+   * @return true Order in system, false no such order
+   */
+  public boolean informOrderPicked( int orderNum )
+         throws OrderException
+  {
+    DEBUG.trace( "DEBUG: Order picked [%d]", orderNum );
+    Folder folder = folders.get( orderNum );
+    return folder != null &&
+           move( folder, State.BeingPicked, beingPicked,
+                 State.ToBeCollected, toBeCollected );
+  }
+
+  /**
+   * Informs the order processing system that the order has been
+   * collected by the customer
+   * @return true If order is in the system, otherwise false
+   */
+  public boolean informOrderCollected( int orderNum )
+         throws OrderException
+  {
+    DEBUG.trace( "DEBUG: Order collected [%d]", orderNum );
+    Folder folder = folders.get( orderNum );
+    if ( folder == null ||
+         ! move( folder, State.ToBeCollected, toBeCollected, null, null ) )
+      return false;
+    folders.remove( orderNum, folder );
+    return true;
+  }
+
+  /**
+   * The changes of state of orders since a version, or every
+   *  order if changes that old are no longer known
+   * @param version Version last seen, -1 if none
+   * @return The changes and the version they bring the client to
+   */
+  public OrderChanges changesSince( long version )
+         throws OrderException
+  {
+    OrderChanges changes = theEvents.since( version );
+    if ( changes == null )                        // Send every order
+    {
+      long seen = theEvents.latest();             // Read first, so an
+      changes = new OrderChanges( seen,           //  order moving now
+                                  getOrderState() ); // is sent again
+    }
+    return changes;
+  }
+
+  /**
+   * Tell a listener of each change of state of an order,
+   *  on a thread of its own
+   * @param l The listener
+   */
+  public void addOrderListener( OrderListener l )
+         throws OrderException
+  {
+    theEvents.add( l );
+  }
+
+  /**
+   * No longer tell a listener of changes
+   * @param l The listener
+   */
+  public void removeOrderListener( OrderListener l )
+         throws OrderException
+  {
+    theEvents.remove( l );
+  }
+
+  /**
+   * Returns information about all the orders (there order number)
+   * in the order processing system
+   * This consists of a map with the following keys:
+   *<PRE>
+   * Key "Waiting"        a list of orders waiting to be processed
+   * Key "BeingPicked"    a list of orders that are currently being picked
+   * Key "ToBeCollected"  a list of orders that can now be collected
+   * Associated with each key is a List&lt;Integer&gt; of order numbers.
+   * Note: Each order number will be unique number.
+   * </PRE>
+   * An order moving while this is read may be missed.
+   * @return a Map with the keys: "Waiting", "BeingPicked", "ToBeCollected"
+   */
+  public Map<String, List<Integer> > getOrderState()
+         throws OrderException
+  {
+    Map < String, List<Integer> > res = new HashMap<>();
+
+    res.put( "Waiting",       orderNums( waiting,       State.Waiting ) );
+    res.put( "BeingPicked",   orderNums( beingPicked,   State.BeingPicked ) );
+    res.put( "ToBeCollected", orderNums( toBeCollected, State.ToBeCollected ) );
+
+    return res;
+  }
+
+  /**
+   * Move an order to the next state, if it is in the state expected.
+   *  It is in the tray for its new state before its state changes,
+   *  and listeners are told while it is locked so each order's
+   *  changes reach them in the order made.
+   * @param folder   The order
+   * @param from     State it must be in
+   * @param fromTray Tray it is taken from, null if already taken
+   * @param to       New state, null if leaving the system
+   * @param toTray   Tray it is put in, null if leaving the system
+   * @return true if moved, false if not in the state expected
+   */
+  private boolean move( Folder folder,
+                        State from,
+                        ConcurrentSkipListMap<Integer,Folder> fromTray,
+                        State to,
+                        ConcurrentSkipListMap<Integer,Folder> toTray )
+  {
+    int orderNum = folder.basket.getOrderNum();
+    synchronized ( folder )                         // This order only
+    {
+      if ( folder.stateIs != from )
+        return false;
+      if ( toTray != null )
+        toTray.put( orderNum, folder );
+      folder.stateIs = to;                          // null if gone
+      if ( fromTray != null )
+        fromTray.remove( orderNum, folder );
+      theEvents.fire( orderNum, to == null ? OrderListener.COLLECTED
+                                           : to.name() );
+      return true;
+    }
+  }
+
+  /**
+   * Return the list of order numbers in selected state
+   * @param tray    The tray of orders in the state
+   * @param inState The state
+   * @return A list of order numbers, lowest first
+   */
+  private static List<Integer> orderNums(
+                       ConcurrentSkipListMap<Integer,Folder> tray,
+                       State inState )
+  {
+    List<Integer> res = new ArrayList<>();
+    for ( Map.Entry<Integer,Folder> e : tray.entrySet() )
+    {
+      if ( e.getValue().stateIs == inState )        // Not just moved on
+        res.add( e.getKey() );
+    }
+    return res;
+  }
+}
@@ -3,11 +3,11 @@ package orders;
 import catalogue.Basket;
 import catalogue.Product;
 import debug.DEBUG;
+import middle.OrderChanges;
 import middle.OrderException;
+import middle.OrderListener;
 import middle.OrderProcessing;
 
-import java.util.stream.Collectors;
-
 import java.util.*;
 
 /**
@@ -18,8 +18,11 @@ import java.util.*;
  * <BR><B>Waiting to be processed<BR>
  * Currently being picked<BR>
  * Waiting to be collected<BR></B>
+ * Orders are found by order number in a hash table, and the orders in
+ *  each stage are held in a tray of their own, oldest first, so
+ *  no request has to look through every order.
  * @author  Mike Smith University of Brighton
- * @version 3.0
+ * @version 3.1
  */
  
 public class Order implements OrderProcessing
@@ -46,9 +49,19 @@ public class Order implements OrderProcessing
     public void newState( State newState ) { stateIs = newState; }
   }
   
-  // Active orders in the Catshop system
-  private final ArrayList<Folder>  folders = new ArrayList<>();
+  // Active orders in the Catshop system, by order number
+  private final HashMap<Integer,Folder> folders = new HashMap<>();
+  // Orders in each state, in the order they entered it
+  private final EnumMap<State,LinkedHashMap<Integer,Folder>> trays =
+    new EnumMap<>( State.class );
   private static int theNextNumber = 1;          // Start at order 1
+  private final OrderEvents theEvents = new OrderEvents();
+
+  public Order()
+  {
+    for ( State state : State.values() )
+      trays.put( state, new LinkedHashMap<>() );
+  }
 
   /**  
    * Used to generate debug information
@@ -83,37 +96,69 @@ public class Order implements OrderProcessing
   /**
    * Add a new order to the order processing system
    * @param bought A new order that is to be processed
+   * @throws OrderException if an order with the same number is
+   *  already in the system
    */ 
   public synchronized void newOrder( Basket bought )
          throws OrderException
   {
     DEBUG.trace( "DEBUG: New order" );
-    folders.add( new Folder( bought ) );
-    for ( Folder bws : folders )
-    {
-       DEBUG.trace( "Order: " + asString( bws.getBasket() ) );
-    }
+    int orderNum = bought.getOrderNum();
+    if ( folders.containsKey( orderNum ) )
+      throw new OrderException( "Order " + orderNum + " already exists" );
+    Folder folder = new Folder( bought );
+    folders.put( orderNum, folder );
+    trays.get( State.Waiting ).put( orderNum, folder );
+    notify();                                     // A waiting picker
+    theEvents.fire( orderNum, State.Waiting.name() );
+    DEBUG.trace( "Order: " + asString( bought ) );
   }
 
   /**
-   * Returns an order to pick from the warehouse.
+   * Returns an order to pick from the warehouse,
+   *  the order that has waited longest
    * @return An order to pick or null if no order
    */
   public synchronized Basket getOrderToPick()
          throws OrderException
   {
     DEBUG.trace( "DEBUG: Get order to pick" );
-    Basket foundWaiting = null;
-    for ( Folder bws : folders )
+    Iterator<Folder> waiting = trays.get( State.Waiting ).values().iterator();
+    if ( ! waiting.hasNext() )
+      return null;
+    Folder folder = waiting.next();
+    waiting.remove();
+    move( folder, State.BeingPicked );
+    return folder.getBasket();
+  }
+
+  /**
+   * Returns an order to pick from the warehouse, waiting
+   *  until one arrives if there is none
+   * @param timeout Longest time to wait in ms
+   * @return An order to pick or null if none arrived in time
+   */
+  public synchronized Basket getOrderToPick( long timeout )
+         throws OrderException
+  {
+    long end = System.currentTimeMillis() + timeout;
+    Basket found = getOrderToPick();
+    while ( found == null )
     {
-      if ( bws.getState() == State.Waiting )
+      long left = end - System.currentTimeMillis();
+      if ( left <= 0 )
+        return null;
+      try
       {
-        foundWaiting = bws.getBasket();
-        bws.newState( State.BeingPicked );
-        break;
+        wait( left );                             // Lets others in
+      } catch ( InterruptedException e )
+      {
+        Thread.currentThread().interrupt();
+        return null;
       }
+      found = getOrderToPick();
     }
-    return foundWaiting;
+    return found;
   }
 
   /**
@@ -127,16 +172,12 @@ public class Order implements OrderProcessing
          throws OrderException
   {
     DEBUG.trace( "DEBUG: Order picked [%d]", orderNum );
-    for ( int i=0; i < folders.size(); i++)
-    {
-      if ( folders.get(i).getBasket().getOrderNum() == orderNum && 
-           folders.get(i).getState()                == State.BeingPicked )
-      {
-        folders.get(i).newState( State.ToBeCollected );
-        return true;
-      }
-    }
-    return false;
+    Folder folder = folders.get( orderNum );
+    if ( folder == null || folder.getState() != State.BeingPicked )
+      return false;
+    trays.get( State.BeingPicked ).remove( orderNum );
+    move( folder, State.ToBeCollected );
+    return true;
   }
 
   /**
@@ -148,16 +189,49 @@ public class Order implements OrderProcessing
          throws OrderException
   {
     DEBUG.trace( "DEBUG: Order collected [%d]", orderNum );
-    for ( int i=0; i < folders.size(); i++)
-    {
-      if ( folders.get(i).getBasket().getOrderNum() == orderNum &&
-           folders.get(i).getState()                == State.ToBeCollected )
-      {
-        folders.remove(i);
-        return true;
-      }
-    }
-    return false;
+    Folder folder = folders.get( orderNum );
+    if ( folder == null || folder.getState() != State.ToBeCollected )
+      return false;
+    trays.get( State.ToBeCollected ).remove( orderNum );
+    folders.remove( orderNum );
+    theEvents.fire( orderNum, OrderListener.COLLECTED );
+    return true;
+  }
+
+  /**
+   * The changes of state of orders since a version, or every
+   *  order if changes that old are no longer known
+   * @param version Version last seen, -1 if none
+   * @return The changes and the version they bring the client to
+   */
+  public synchronized OrderChanges changesSince( long version )
+         throws OrderException
+  {
+    OrderChanges changes = theEvents.since( version );
+    if ( changes == null )                        // Send every order
+      changes = new OrderChanges( theEvents.latest(), getOrderState() );
+    return changes;
+  }
+
+  /**
+   * Tell a listener of each change of state of an order,
+   *  on a thread of its own
+   * @param l The listener
+   */
+  public void addOrderListener( OrderListener l )
+         throws OrderException
+  {
+    theEvents.add( l );
+  }
+
+  /**
+   * No longer tell a listener of changes
+   * @param l The listener
+   */
+  public void removeOrderListener( OrderListener l )
+         throws OrderException
+  {
+    theEvents.remove( l );
   }
 
   /**
@@ -187,33 +261,25 @@ public class Order implements OrderProcessing
   }
 
   /**
-   * Return the list of order numbers in selected state
-   * @param inState The state to find order numbers in
-   * @return A list of order numbers
+   * Put the order in the tray for its new state
+   * @param folder   The order, already taken from its old tray
+   * @param newState The state it is now in
    */
-  private List<Integer> orderNumsOldWay( State inState )
+  private void move( Folder folder, State newState )
   {
-    List <Integer> res = new ArrayList<>();
-    for ( Folder folder : folders )
-    {
-      if ( folder.getState() == inState )
-      {
-       res.add( folder.getBasket().getOrderNum() );
-      }
-    }
-    return res;
+    int orderNum = folder.getBasket().getOrderNum();
+    folder.newState( newState );
+    trays.get( newState ).put( orderNum, folder );
+    theEvents.fire( orderNum, newState.name() );
   }
 
   /**
    * Return the list of order numbers in selected state
    * @param inState The state to find order numbers in
-   * @return A list of order numbers
+   * @return A list of order numbers, oldest first
    */
   private List<Integer> orderNums( State inState )
   {
-    return folders.stream()
-            .filter( folder -> folder.getState() == inState ) 
-            .map( folder -> folder.getBasket().getOrderNum() )
-            .collect( Collectors.toList() );
+    return new ArrayList<>( trays.get( inState ).keySet() );
   }
 }
@@ -0,0 +1,198 @@
+package orders;
+
+import debug.DEBUG;
+import middle.OrderChanges;
+import middle.OrderListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+  * The listeners told of changes to orders. Each listener is told
+  *  by a thread of its own, taken from a pool only while it has a
+  *  change to be told of, so the order processing system never waits
+  *  for a listener and a slow listener never holds up the others.
+  * Changes made while a listener is still being told of an earlier
+  *  one are coalesced, it is then told only of the latest. A listener
+  *  can ask for the changes since the version it last saw to find
+  *  the rest.
+  * Changes are numbered and remembered without a lock, so orders
+  *  moving at once do not wait for each other here. Each slot holds
+  *  an entry that is never changed, written once it is complete,
+  *  and a change whose number is taken but whose entry is not yet
+  *  written is left to the next call of since.
+  * The most recent changes are also remembered, each numbered by a
+  *  version that only goes up, so a client can ask for the changes
+  *  since the version it last saw. Versions start from the time the
+  *  system started so those of an earlier run are not mistaken
+  *  for this one's.
+  * @version 1.0
+  */
+
+class OrderEvents
+{
+  private final ConcurrentHashMap<OrderListener,Delivery> theListeners =
+    new ConcurrentHashMap<>();
+  private final ExecutorService theDispatcher =  // At most one thread
+    Executors.newCachedThreadPool( r -> {        //  for each listener
+      Thread t = new Thread( r, "Order events" );
+      t.setDaemon( true );
+      return t;
+    } );
+
+  private static final int KEEP = 4096;         // Changes remembered
+
+  /**
+   * A change remembered, with its version
+   */
+  private static final class Entry
+  {
+    private final long   theVersion;
+    private final int    theOrderNum;
+    private final String theState;
+
+    private Entry( long version, int orderNum, String state )
+    {
+      theVersion  = version;
+      theOrderNum = orderNum;
+      theState    = state;
+    }
+  }
+
+  private final AtomicReferenceArray<Entry> theEntries =
+    new AtomicReferenceArray<>( KEEP );
+  private final long       theFirst  = System.currentTimeMillis() << 20;
+  private final AtomicLong theLatest = new AtomicLong( theFirst );
+
+  void add( OrderListener listener )
+  {
+    theListeners.computeIfAbsent( listener, Delivery::new );
+  }
+
+  void remove( OrderListener listener )
+  {
+    theListeners.remove( listener );
+  }
+
+  /**
+   * Tell the listeners an order has changed state, later
+   * @param orderNum The order number
+   * @param state    Its new state
+   */
+  void fire( int orderNum, String state )
+  {
+    record( orderNum, state );
+    if ( theListeners.isEmpty() )
+      return;                                   // Nobody to tell
+    OrderChanges.Change change = new OrderChanges.Change( orderNum, state );
+    for ( Delivery delivery : theListeners.values() )
+      delivery.offer( change );
+  }
+
+  /**
+   * The change a listener is still to be told of, at most one as
+   *  a later change replaces it, and whether a thread is telling it
+   */
+  private final class Delivery implements Runnable
+  {
+    private final OrderListener theListener;
+    private final AtomicReference<OrderChanges.Change> theNext =
+      new AtomicReference<>();
+    private final AtomicBoolean theRunning = new AtomicBoolean( false );
+
+    Delivery( OrderListener listener )
+    {
+      theListener = listener;
+    }
+
+    void offer( OrderChanges.Change change )
+    {
+      theNext.set( change );                    // Replaces any not told
+      if ( theRunning.compareAndSet( false, true ) )
+        theDispatcher.execute( this );
+    }
+
+    public void run()
+    {
+      while ( true )
+      {
+        OrderChanges.Change change = theNext.getAndSet( null );
+        if ( change == null )
+        {
+          theRunning.set( false );              // Offered since, and
+          if ( theNext.get() == null ||         //  not taken by a new
+               ! theRunning.compareAndSet( false, true ) ) // thread
+            return;
+          continue;
+        }
+        if ( theListeners.get( theListener ) != this )
+          return;                               // Removed, never run
+        try                                     //  again
+        {
+          theListener.orderChanged( change.getOrderNum(),
+                                    change.getState() );
+        } catch ( RuntimeException e )
+        {
+          DEBUG.traceA( "OrderEvents: listener failed\n%s",
+                        e.getMessage() );
+        }
+      }
+    }
+  }
+
+  /**
+   * Remember a change, the slot for version v is v % KEEP
+   * @param orderNum The order number
+   * @param state    Its new state
+   */
+  private void record( int orderNum, String state )
+  {
+    long version = theLatest.incrementAndGet();
+    theEntries.setRelease( (int) ( version % KEEP ),
+                           new Entry( version, orderNum, state ) );
+  }
+
+  /**
+   * Version of the last change, whose entry may not yet be written
+   *  but whose order is already in its new state
+   * @return version
+   */
+  long latest()
+  {
+    return theLatest.get();
+  }
+
+  /**
+   * The changes made after the version given, up to the first
+   *  one whose entry is not yet written
+   * @param version Last version seen
+   * @return The changes, null if changes that old are forgotten
+   *  or the version is one not reached
+   */
+  OrderChanges since( long version )
+  {
+    long latest = theLatest.get();
+    long left   = latest - version;             // Changes since
+    if ( version < theFirst || left < 0 || left > KEEP )
+      return null;                              // Not held
+    List<OrderChanges.Change> res = new ArrayList<>( (int) left );
+    long v = version + 1;
+    for ( ; v <= latest; v++ )
+    {
+      Entry e = theEntries.getAcquire( (int) ( v % KEEP ) );
+      if ( e == null || e.theVersion < v )
+        break;                                  // Not yet written
+      if ( e.theVersion > v )
+        return null;                            // Written over
+      res.add( new OrderChanges.Change( e.theOrderNum, e.theState ) );
+    }
+    return new OrderChanges( v - 1, res );
+  }
+}
@@ -0,0 +1,55 @@
+package orders;
+
+import debug.DEBUG;
+import middle.OrderProcessing;
+
+/**
+  * Makes the order processing system, either Order, where each request
+  *  locks the whole system, or ConcurrentOrder, where requests for
+  *  different orders do not wait for each other.
+  * Chosen by setKind or else the system property catshop.orders,
+  *  for example java -Dcatshop.orders=Concurrent clients.Main
+  * @version 1.0
+  */
+
+// Pattern: Factory
+
+public class OrderFactory
+{
+  public static final String PROPERTY = "catshop.orders";
+
+  private static String theKind = null;            // null use property
+
+  /**
+   * Choose the order processing system made
+   * @param kind "Concurrent" or "Order", null to use the property
+   */
+  public static void setKind( String kind )
+  {
+    theKind = kind;
+  }
+
+  /**
+   * Make the order processing system chosen
+   * @return A new order processing system
+   */
+  public static OrderProcessing makeOrderProcessing()
+  {
+    String kind = theKind != null ? theKind
+                                  : System.getProperty( PROPERTY, "Order" );
+    DEBUG.traceA( "Using [%s] order processing\n", kind );
+    switch ( kind )
+    {
+      case "Concurrent" :
+        return new ConcurrentOrder();      // Lock per order
+
+      case "Order" :
+        return new Order();                // One lock
+
+      default:
+        DEBUG.traceA( "Order processing [%s] not known, using Order\n",
+                      kind );
+        return new Order();
+    }
+  }
+}
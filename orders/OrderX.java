@@ -4,7 +4,9 @@ package orders;
 import catalogue.Basket;
 import catalogue.Product;
 import debug.DEBUG;
+import middle.OrderChanges;
 import middle.OrderException;
+import middle.OrderListener;
 import middle.OrderProcessing;
 
 import java.util.stream.Collectors;
@@ -35,6 +37,7 @@ import java.util.Formatter;
 public class OrderX implements OrderProcessing
 {
   private static int theNextNumber = 1;          // Start at 1
+  private final OrderEvents theEvents = new OrderEvents();
   // Orders entered but waiting to be processed (picked)
   private ArrayList<Basket>  theWaitingTray = new ArrayList<Basket>();
 
@@ -83,6 +86,8 @@ public class OrderX implements OrderProcessing
     // You need to modify and fill in the correct code
     DEBUG.trace( "DEBUG: New order" );
     theWaitingTray.add( bought );
+    notify();                                     // A waiting picker
+    theEvents.fire( bought.getOrderNum(), "Waiting" );
     for ( Basket bl : theWaitingTray )
     {
       DEBUG.trace( "Order: " + asString( bl ) );
@@ -104,11 +109,39 @@ public class OrderX implements OrderProcessing
     {
       Basket process = theWaitingTray.remove(0);
        theBeingPickedTray.add( process );
+       theEvents.fire( process.getOrderNum(), "BeingPicked" );
        return process;
     }
      return null;
   }
 
+  /**
+   * Returns an order to pick from the warehouse, waiting
+   *  until one arrives if there is none
+   * @param timeout Longest time to wait in ms
+   * @return An order to pick or null if none arrived in time
+   */
+  public synchronized Basket getOrderToPick( long timeout )
+         throws OrderException
+  {
+    long end = System.currentTimeMillis() + timeout;
+    while ( theWaitingTray.isEmpty() )
+    {
+      long left = end - System.currentTimeMillis();
+      if ( left <= 0 )
+        return null;
+      try
+      {
+        wait( left );                             // Lets others in
+      } catch ( InterruptedException e )
+      {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+    }
+    return getOrderToPick();
+  }
+
   /**
    * Informs the order processing system that the order has been
    * picked and the products are now being delivered to the
@@ -128,6 +161,7 @@ public class OrderX implements OrderProcessing
       {
         Basket picked = theBeingPickedTray.remove(i);
         theToBeCollectedTray.add( picked );
+        theEvents.fire( orderNum, "ToBeCollected" );
         return true;
       }
     }
@@ -150,12 +184,49 @@ public class OrderX implements OrderProcessing
       if ( theToBeCollectedTray.get(i).getOrderNum() == orderNum )
       {
         theToBeCollectedTray.remove(i);
+        theEvents.fire( orderNum, OrderListener.COLLECTED );
         return true;
       }
     }
     return false;
   }
 
+  /**
+   * The changes of state of orders since a version, or every
+   *  order if changes that old are no longer known
+   * @param version Version last seen, -1 if none
+   * @return The changes and the version they bring the client to
+   */
+  public synchronized OrderChanges changesSince( long version )
+         throws OrderException
+  {
+    OrderChanges changes = theEvents.since( version );
+    if ( changes == null )                        // Send every order
+      changes = new OrderChanges( theEvents.latest(), getOrderState() );
+    return changes;
+  }
+
+  /**
+   * Tell a listener of each change of state of an order,
+   *  on a thread of its own
+   * @param l The listener
+   */
+  public void addOrderListener( OrderListener l )
+         throws OrderException
+  {
+    theEvents.add( l );
+  }
+
+  /**
+   * No longer tell a listener of changes
+   * @param l The listener
+   */
+  public void removeOrderListener( OrderListener l )
+         throws OrderException
+  {
+    theEvents.remove( l );
+  }
+
   /**
    * Returns information about all the orders (order number) in the order processing system
    * This consists of a map with the orders in the 3 states:
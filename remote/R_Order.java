@@ -1,13 +1,24 @@
 package remote;
 
 import catalogue.Basket;
+import debug.DEBUG;
+import middle.OrderChanges;
 import middle.OrderException;
-import orders.Order;
+import middle.OrderListener;
+import middle.OrderProcessing;
+import orders.OrderFactory;
 
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * The order processing handling.
@@ -21,12 +32,23 @@ public class      R_Order
        implements RemoteOrder_I
 {
   private static final long serialVersionUID = 1;
-  private Order aOrder = null;
+  private OrderProcessing aOrder = null;
+  private final Map<RemoteOrderListener_I,OrderListener> theListeners =
+    new ConcurrentHashMap<>();
 
+  private static final long CALLBACK_TIMEOUT = 5000; // ms, then dropped
+  private final transient ExecutorService theCallers =
+    Executors.newCachedThreadPool( r -> {
+      Thread t = new Thread( r, "Order callbacks" );
+      t.setDaemon( true );
+      return t;
+    } );
+
+  // The kind of order processing system is chosen by OrderFactory
   public R_Order( String url )
          throws RemoteException, OrderException
   {
-    aOrder = new Order();
+    aOrder = OrderFactory.makeOrderProcessing();
   }
 
   public void newOrder( Basket bought )
@@ -47,6 +69,13 @@ public class      R_Order
   {
       return aOrder.getOrderToPick();
   }
+
+  // Holds the RMI call open until an order arrives or the time is up
+  public Basket getOrderToPick( long timeout )
+         throws RemoteException, OrderException
+  {
+      return aOrder.getOrderToPick( timeout );
+  }
   
   public boolean informOrderPicked( int orderNum )
          throws RemoteException, OrderException
@@ -67,4 +96,65 @@ public class      R_Order
     return aOrder.getOrderState();
   }
 
+  public OrderChanges changesSince( long version )
+         throws RemoteException, OrderException
+  {
+    return aOrder.changesSince( version );
+  }
+
+  // Each client listening is told of changes by a listener here,
+  //  which stops listening if the client can not be reached or does
+  //  not answer in time. RMI has no timeout on a call, so the call is
+  //  made on another thread and given up on after CALLBACK_TIMEOUT
+  public void addOrderListener( RemoteOrderListener_I remote )
+         throws RemoteException, OrderException
+  {
+    OrderListener local = new OrderListener()
+    {
+      public void orderChanged( int orderNum, String state )
+      {
+        Future<?> call = theCallers.submit( () -> {
+          remote.orderChanged( orderNum, state );
+          return null;
+        } );
+        try
+        {
+          call.get( CALLBACK_TIMEOUT, TimeUnit.MILLISECONDS );
+        } catch ( ExecutionException | TimeoutException e )
+        {
+          call.cancel( true );
+          DEBUG.traceA( "R_Order: listener gone\n%s",
+                        e instanceof TimeoutException ? "No answer"
+                                                      : e.getMessage() );
+          drop( remote );
+        } catch ( InterruptedException e )
+        {
+          call.cancel( true );
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    if ( theListeners.putIfAbsent( remote, local ) == null )
+      aOrder.addOrderListener( local );
+  }
+
+  public void removeOrderListener( RemoteOrderListener_I remote )
+         throws RemoteException, OrderException
+  {
+    OrderListener local = theListeners.remove( remote );
+    if ( local != null )
+      aOrder.removeOrderListener( local );
+  }
+
+  private void drop( RemoteOrderListener_I remote )
+  {
+    try
+    {
+      removeOrderListener( remote );
+    } catch ( RemoteException | OrderException e )
+    {
+      // Not listening
+    }
+  }
+
 }
@@ -0,0 +1,32 @@
+package remote;
+
+import middle.OrderListener;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+
+/**
+ * Held by a client, passes changes to orders sent by the
+ *  order processing system on to a listener in the client.
+ * @version 1.0
+ */
+
+public class      R_OrderListener
+       extends    UnicastRemoteObject
+       implements RemoteOrderListener_I
+{
+  private static final long serialVersionUID = 1;
+  private final transient OrderListener theListener;
+
+  public R_OrderListener( OrderListener listener )
+         throws RemoteException
+  {
+    theListener = listener;
+  }
+
+  public void orderChanged( int orderNum, String state )
+         throws RemoteException
+  {
+    theListener.orderChanged( orderNum, state );
+  }
+}
@@ -1,15 +1,21 @@
 package remote;
 
 import catalogue.Product;
-import dbAccess.StockR;
+import catalogue.ProductInfo;
+import dbAccess.DBAccessFactory;
+import middle.StockChanges;
 import middle.StockException;
+import middle.StockReader;
 
 import javax.swing.*;
 import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
-// There can only be 1 ResultSet opened per statement
-// so no simultaneous use of the statement object
-// hence the synchronized methods
+// StockR borrows a connection per request
+// so requests from different clients run at the same time
 
 /**
  * Implements Read access to the stock list,
@@ -22,12 +28,12 @@ public class      R_StockR
        implements RemoteStockR_I
 {
   private static final long serialVersionUID = 1;
-  private StockR aStockR = null;
+  private StockReader aStockR = null;
 
   public R_StockR( String url )
          throws RemoteException, StockException
   {
-    aStockR = new StockR();
+    aStockR = (new DBAccessFactory()).getNewStockReader();
   }
 
   /**
@@ -35,7 +41,7 @@ public class      R_StockR
    * @param pNum The product number
    * @return true if exists otherwise false
    */
-  public synchronized boolean exists( String pNum )
+  public boolean exists( String pNum )
          throws RemoteException, StockException
   {
     return aStockR.exists( pNum );
@@ -46,12 +52,23 @@ public class      R_StockR
    * @param pNum The product number
    * @return StockNumber, Description, Price, Quantity
    */
-  public synchronized Product getDetails( String pNum )
+  public Product getDetails( String pNum )
          throws RemoteException, StockException
   {
     return aStockR.getDetails( pNum );
   }
   
+  /**
+   * Returns details about many products in one request
+   * @param pNums The product numbers
+   * @return Map of product number to details
+   */
+  public Map<String,Product> getDetails( Collection<String> pNums )
+         throws RemoteException, StockException
+  {
+    return aStockR.getDetails( pNums );
+  }
+
   /**
    * Returns an image of the product
    * BUG However this will not work for distributed version
@@ -59,10 +76,58 @@ public class      R_StockR
    * @param pNum The product number
    * @return Image
    */
-  public synchronized ImageIcon getImage( String pNum )
+  public ImageIcon getImage( String pNum )
          throws RemoteException, StockException
   {
     return aStockR.getImage( pNum );
   }
 
+  /**
+   * Returns details, stock level and picture of the product
+   *  Optional is not Serializable so null is used for no product
+   * @param pNum The product number
+   * @return The product or null if it does not exist
+   */
+  public ProductInfo lookup( String pNum )
+         throws RemoteException, StockException
+  {
+    return aStockR.lookup( pNum ).orElse( null );
+  }
+
+  /**
+   * Returns the next page of products in product number order,
+   *  a stream can not be sent so the client asks for each page
+   * @param after Product number before the page, "" for the first
+   * @param size  Maximum number of products returned
+   * @return The products
+   */
+  public List<Product> scanPage( String after, int size )
+         throws RemoteException, StockException
+  {
+    return new ArrayList<>( aStockR.scanPage( after, size ) );
+  }
+
+  /**
+   * Returns the products whose descriptions best match the search
+   * @param words The words searched for
+   * @param max   Maximum number of products returned
+   * @return The products, best match first
+   */
+  public List<Product> search( String words, int max )
+         throws RemoteException, StockException
+  {
+    return new ArrayList<>( aStockR.search( words, max ) );
+  }
+
+  /**
+   * Returns the products changed since the version given
+   * @param version Version last seen
+   * @return The changes and the version now
+   */
+  public StockChanges changesSince( long version )
+         throws RemoteException, StockException
+  {
+    return aStockR.changesSince( version );
+  }
+
 }
@@ -1,15 +1,23 @@
 package remote;
 
+import catalogue.Basket;
 import catalogue.Product;
-import dbAccess.StockRW;
+import catalogue.ProductInfo;
+import dbAccess.DBAccessFactory;
+import middle.StockChanges;
 import middle.StockException;
+import middle.StockReadWriter;
+import middle.StockUpdate;
 
 import javax.swing.*;
 import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
-// There can only be 1 ResultSet opened per statement
-// so no simultaneous use of the statement object
-// hence the synchronized methods
+// Requests are passed straight on, StockRW borrows a connection
+// for each request and locks only the products being changed
 
 /**
  * Implements Read/Write access to the stock list,
@@ -23,7 +31,7 @@ public class      R_StockRW
        implements RemoteStockRW_I
 {
   private static final long serialVersionUID = 1;
-  private StockRW aStockRW = null;
+  private StockReadWriter aStockRW = null;
 
   /**
    * All transactions are done via StockRW to ensure
@@ -35,7 +43,7 @@ public class      R_StockRW
   public R_StockRW(String url)
          throws RemoteException, StockException
   {
-    aStockRW = new StockRW();
+    aStockRW = (new DBAccessFactory()).getNewStockReadWriter();
   }
   
   /**
@@ -44,7 +52,7 @@ public class      R_StockRW
    * @return true if product exists else false
    * @throws middle.StockException if underlying error
    */
-  public synchronized boolean exists( String pNum )
+  public boolean exists( String pNum )
          throws StockException
   {
     return aStockRW.exists( pNum );
@@ -56,24 +64,86 @@ public class      R_StockRW
    * @return StockNumber, Description, Price, Quantity
    * @throws middle.StockException if underlying error
    */
-  public synchronized Product getDetails( String pNum )
+  public Product getDetails( String pNum )
          throws StockException
   {
     return aStockRW.getDetails( pNum );
   }
 
+  /**
+   * Returns details about many products in one request
+   * @param pNums The product numbers
+   * @return Map of product number to details
+   * @throws middle.StockException if underlying error
+   */
+  public Map<String,Product> getDetails( Collection<String> pNums )
+         throws StockException
+  {
+    return aStockRW.getDetails( pNums );
+  }
+
   /**
    * Returns an image of the product in the stock list
    * @param pNum The product number
    * @return image
    * @throws middle.StockException if underlying error
    */
-  public synchronized ImageIcon getImage( String pNum )
+  public ImageIcon getImage( String pNum )
          throws StockException
   {
     return aStockRW.getImage( pNum );
   }
 
+  /**
+   * Returns details, stock level and picture of the product
+   * @param pNum The product number
+   * @return The product or null if it does not exist
+   * @throws middle.StockException if underlying error
+   */
+  public ProductInfo lookup( String pNum )
+         throws StockException
+  {
+    return aStockRW.lookup( pNum ).orElse( null );
+  }
+
+  /**
+   * Returns the next page of products in product number order
+   * @param after Product number before the page, "" for the first
+   * @param size  Maximum number of products returned
+   * @return The products
+   * @throws middle.StockException if underlying error
+   */
+  public List<Product> scanPage( String after, int size )
+         throws StockException
+  {
+    return new ArrayList<>( aStockRW.scanPage( after, size ) );
+  }
+
+  /**
+   * Returns the products whose descriptions best match the search
+   * @param words The words searched for
+   * @param max   Maximum number of products returned
+   * @return The products, best match first
+   * @throws middle.StockException if underlying error
+   */
+  public List<Product> search( String words, int max )
+         throws StockException
+  {
+    return new ArrayList<>( aStockRW.search( words, max ) );
+  }
+
+  /**
+   * Returns the products changed since the version given
+   * @param version Version last seen
+   * @return The changes and the version now
+   * @throws middle.StockException if underlying error
+   */
+  public StockChanges changesSince( long version )
+         throws StockException
+  {
+    return aStockRW.changesSince( version );
+  }
+
 
   /**
    * Buys stock and hence decrements number in the stock list
@@ -85,19 +155,31 @@ public class      R_StockRW
   // Need to Fix
   //  What happens if can not commit data
   //
-  public synchronized boolean buyStock( String pNum, int amount )
+  public boolean buyStock( String pNum, int amount )
          throws StockException
   {
     return aStockRW.buyStock( pNum, amount );
   }
 
+  /**
+   * Buys all the products in the basket as one transaction
+   * @param basket products and quantities required
+   * @return for each line true if it could be bought
+   * @throws middle.StockException if underlying error
+   */
+  public boolean[] buyStock( Basket basket )
+         throws StockException
+  {
+    return aStockRW.buyStock( basket );
+  }
+
   /**
    * Adds (Restocks) stock to the product list
    * @param pNum The product number
    * @param amount Quantity
    * @throws middle.StockException if underlying error
    */
-  public synchronized void addStock( String pNum, int amount )
+  public void addStock( String pNum, int amount )
          throws StockException
   {
     aStockRW.addStock( pNum, amount );
@@ -110,9 +192,20 @@ public class      R_StockRW
    * @param product The product to be modified
    * @throws middle.StockException if underlying error
    */
-  public synchronized void modifyStock( Product product )
+  public void modifyStock( Product product )
               throws StockException
   {
     aStockRW.modifyStock( product );
   }
+
+  /**
+   * Makes all the changes as one unit of work
+   * @param changes Changes to the stock list, made in order
+   * @throws middle.StockException if underlying error, none made
+   */
+  public void update( StockUpdate changes )
+              throws StockException
+  {
+    aStockRW.update( changes );
+  }
 }
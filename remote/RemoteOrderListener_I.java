@@ -0,0 +1,16 @@
+package remote;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Defines the RMI interface of a client told of changes to orders,
+ *  called back by the order processing system on the middle tier.
+ * @version 1.0
+ */
+
+public interface RemoteOrderListener_I extends Remote
+{
+  public void orderChanged(int orderNum, String state)
+         throws RemoteException;
+}
@@ -1,6 +1,7 @@
 package remote;
 
 import catalogue.Basket;
+import middle.OrderChanges;
 import middle.OrderException;
 
 import java.rmi.Remote;
@@ -22,11 +23,19 @@ public interface RemoteOrder_I extends Remote
          throws RemoteException, OrderException;
   public Basket getOrderToPick() 
          throws  RemoteException, OrderException;
+  public Basket getOrderToPick(long timeout) 
+         throws  RemoteException, OrderException;
   public boolean informOrderPicked(int orderNum)
          throws  RemoteException, OrderException;
   public boolean informOrderCollected(int orderNum)
          throws RemoteException, OrderException;
   public Map<String, List<Integer>> getOrderState() 
          throws  RemoteException, OrderException;
+  public OrderChanges changesSince( long version )
+         throws  RemoteException, OrderException;
+  public void addOrderListener(RemoteOrderListener_I l)
+         throws  RemoteException, OrderException;
+  public void removeOrderListener(RemoteOrderListener_I l)
+         throws  RemoteException, OrderException;
 }
 
@@ -5,8 +5,10 @@
 
 package remote;
 
+import catalogue.Basket;
 import catalogue.Product;
 import middle.StockException;
+import middle.StockUpdate;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
@@ -22,9 +24,13 @@ public interface RemoteStockRW_I
 {
   boolean buyStock(String number, int amount)
           throws RemoteException, StockException;
+  boolean[] buyStock(Basket basket)
+          throws RemoteException, StockException;
   void    addStock(String number, int amount)
           throws RemoteException, StockException;
   void    modifyStock(Product detail)
           throws RemoteException, StockException;
+  void    update(StockUpdate changes)
+          throws RemoteException, StockException;
 }
 
@@ -1,11 +1,16 @@
 package remote;
 
 import catalogue.Product;
+import catalogue.ProductInfo;
+import middle.StockChanges;
 import middle.StockException;
 
 import javax.swing.*;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Defines the RMI interface for read access to the stock object.
@@ -20,7 +25,17 @@ public interface RemoteStockR_I
             throws RemoteException, StockException;
   Product   getDetails(String number)
             throws RemoteException, StockException;
+  Map<String,Product> getDetails(Collection<String> numbers)
+            throws RemoteException, StockException;
   ImageIcon getImage(String number)
             throws RemoteException, StockException;
+  ProductInfo lookup(String number)           // null if no product
+            throws RemoteException, StockException;
+  List<Product> scanPage(String after, int size)
+            throws RemoteException, StockException;
+  List<Product> search(String words, int max)
+            throws RemoteException, StockException;
+  StockChanges  changesSince(long version)
+            throws RemoteException, StockException;
 }
 